@@ -0,0 +1,25 @@
+package ru.yandex.myblog.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableAsync
+public class AsyncConfiguration {
+
+    @Bean
+    public ThreadPoolTaskExecutor imageVariantExecutor(@Value("${myblog.image-variants.threads:1}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // декодирование большой картинки занимает много памяти, поэтому потоков немного
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("image-variant-");
+        // при остановке дожидаемся уже принятых картинок, иначе они останутся без превью
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
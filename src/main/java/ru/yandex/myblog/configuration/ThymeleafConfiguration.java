@@ -1,39 +1,119 @@
 package ru.yandex.myblog.configuration;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.thymeleaf.ThymeleafProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.web.servlet.ViewResolver;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.StandardCache;
+import org.thymeleaf.cache.StandardCacheManager;
+import org.thymeleaf.context.Context;
 import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring6.view.ThymeleafViewResolver;
-import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 import org.thymeleaf.templateresolver.ITemplateResolver;
 
+import java.util.List;
+
+@Slf4j
 @Configuration
+@EnableConfigurationProperties(ThymeleafProperties.class)
 public class ThymeleafConfiguration {
 
     @Bean
-    public ITemplateResolver templateResolver() {
-        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
-        resolver.setPrefix("/templates/"); // Директория для хранения HTML-шаблонов
-        resolver.setSuffix(".html");       // Суффикс шаблонов
-        resolver.setTemplateMode("HTML");  // Режим шаблонов
-        resolver.setCharacterEncoding("UTF-8");
+    public ITemplateResolver templateResolver(ThymeleafProperties properties) {
+        SpringResourceTemplateResolver resolver = new SpringResourceTemplateResolver();
+        resolver.setPrefix(properties.getPrefix());   // Директория для хранения HTML-шаблонов
+        resolver.setSuffix(properties.getSuffix());   // Суффикс шаблонов
+        resolver.setTemplateMode(properties.getMode()); // Режим шаблонов
+        resolver.setCharacterEncoding(properties.getEncoding().name());
+        resolver.setCheckExistence(properties.isCheckTemplate());
+        // без TTL: закэшированный шаблон живёт до вытеснения из ограниченного кэша
+        resolver.setCacheable(properties.isCache());
         return resolver;
     }
 
     @Bean
-    public SpringTemplateEngine templateEngine(ITemplateResolver templateResolver) {
+    public SpringTemplateEngine templateEngine(ITemplateResolver templateResolver,
+                                               @Value("${myblog.thymeleaf.template-cache-size:50}") int templateCacheSize,
+                                               @Value("${myblog.thymeleaf.expression-cache-size:500}") int expressionCacheSize) {
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(templateCacheSize);
+        cacheManager.setTemplateCacheEnableCounters(true);
+        cacheManager.setExpressionCacheMaxSize(expressionCacheSize);
+        cacheManager.setExpressionCacheEnableCounters(true);
+
         SpringTemplateEngine engine = new SpringTemplateEngine();
         engine.setTemplateResolver(templateResolver);
+        engine.setCacheManager(cacheManager);
         return engine;
     }
 
     @Bean
-    public ViewResolver viewResolver(SpringTemplateEngine templateEngine) {
+    public ViewResolver viewResolver(SpringTemplateEngine templateEngine, ThymeleafProperties properties) {
         ThymeleafViewResolver resolver = new ThymeleafViewResolver();
         resolver.setTemplateEngine(templateEngine);
-        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCharacterEncoding(properties.getEncoding().name());
+        resolver.setExcludedViewNames(properties.getExcludedViewNames());
+        resolver.setViewNames(properties.getViewNames());
+        resolver.setCache(properties.isCache());
+        resolver.setOrder(Ordered.LOWEST_PRECEDENCE - 5);
         return resolver;
     }
 
-}
\ No newline at end of file
+    /**
+     * Разбирает перечисленные шаблоны при старте, чтобы первый запрос после
+     * деплоя не платил за их парсинг. Шаблоны только кладутся в кэш и не
+     * исполняются, поэтому модель для них не нужна.
+     */
+    @Bean
+    public ApplicationRunner templatePrecompiler(SpringTemplateEngine templateEngine,
+                                                 ThymeleafProperties properties,
+                                                 @Value("${myblog.thymeleaf.precompile:}") List<String> templates) {
+        return args -> {
+            if (!properties.isCache()) {
+                return;
+            }
+            for (String template : templates) {
+                templateEngine.processThrottled(template, new Context());
+            }
+            log.info("Precompiled templates {}", templates);
+        };
+    }
+
+    @Bean
+    public MeterBinder templateCacheMetrics(SpringTemplateEngine templateEngine) {
+        return registry -> {
+            bindCacheMetrics(registry, templateEngine.getCacheManager().getTemplateCache(), "thymeleaf-templates");
+            bindCacheMetrics(registry, templateEngine.getCacheManager().getExpressionCache(), "thymeleaf-expressions");
+        };
+    }
+
+    private static void bindCacheMetrics(MeterRegistry registry, ICache<?, ?> cache, String name) {
+        if (!(cache instanceof StandardCache<?, ?> standardCache)) {
+            return;
+        }
+        Gauge.builder("cache.size", standardCache, StandardCache::size)
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("cache.gets", standardCache, StandardCache::getHitCount)
+                .tags("cache", name, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", standardCache, StandardCache::getMissCount)
+                .tags("cache", name, "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.puts", standardCache, StandardCache::getPutCount)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+}
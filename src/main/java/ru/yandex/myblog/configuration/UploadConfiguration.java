@@ -0,0 +1,18 @@
+package ru.yandex.myblog.configuration;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UploadConfiguration {
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> uploadRejectingTomcatCustomizer() {
+        // 100 Continue отправляется только при первом чтении тела: запрос больше
+        // spring.servlet.multipart.max-request-size отклоняется по Content-Length, и клиент не шлёт тело
+        return factory -> factory.addConnectorCustomizers(connector ->
+                connector.setProperty("continueResponseTiming", "onRead"));
+    }
+}
@@ -1,23 +1,37 @@
 package ru.yandex.myblog.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
-import ru.yandex.myblog.model.domain.Post;
-import ru.yandex.myblog.model.dto.FeedPostDto;
-import ru.yandex.myblog.model.dto.Paging;
+import org.springframework.web.context.request.WebRequest;
+import ru.yandex.myblog.model.dto.FeedCacheKey;
+import ru.yandex.myblog.model.dto.FeedCursor;
+import ru.yandex.myblog.model.dto.FeedPage;
+import ru.yandex.myblog.model.dto.FeedView;
 import ru.yandex.myblog.model.mappers.PostMapper;
+import ru.yandex.myblog.service.FeedCache;
+import ru.yandex.myblog.service.FeedRowCache;
 import ru.yandex.myblog.service.FeedService;
-
-import java.util.List;
+import ru.yandex.myblog.service.PostCountCache;
+import ru.yandex.myblog.service.TopTagsCache;
 
 @Controller
 @RequiredArgsConstructor
 public class FeedController {
 
+    private static final int TAG_CLOUD_SIZE = 30;
+
     private final FeedService feedService;
     private final PostMapper postMapper;
+    private final PostCountCache postCountCache;
+    private final FeedCache feedCache;
+    private final FeedRowCache feedRowCache;
+    private final TopTagsCache topTagsCache;
 
     @GetMapping(value = "/")
     public String redirect() {
@@ -27,21 +41,54 @@ public class FeedController {
     @GetMapping("/posts")
     public String getFeed(
             @RequestParam(name = "search", defaultValue = "", required = false) String search,
+            @RequestParam(name = "query", defaultValue = "", required = false) String query,
             @RequestParam(name = "pageSize", defaultValue = "10", required = false) int pageSize,
             @RequestParam(name = "pageNumber",defaultValue = "1", required = false) int pageNumber,
+            @RequestParam(name = "after", required = false) String after,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            WebRequest webRequest,
             Model model) {
 
-        List<Post> posts = feedService.getPosts(search, pageSize, pageNumber);
-        List<FeedPostDto> feedPostDtoList = postMapper.toFeedPostDtoList(posts);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        if (webRequest.checkNotModified(feedCache.eTag(), feedCache.lastModified().toEpochMilli())) {
+            return null;
+        }
 
-        Paging pageInfo = feedService.getPageInfo(pageSize, pageNumber, search);
+        String phrase = query.strip();
+        // search phrases hardly ever repeat, so search results are not put in the feed cache
+        FeedView view = phrase.isEmpty()
+                ? getFeedView(search, pageSize, pageNumber, after)
+                : toView(feedService.searchPosts(phrase, search, pageSize, pageNumber));
 
-        model.addAttribute("paging", pageInfo);
-        model.addAttribute("posts", feedPostDtoList);
+        model.addAttribute("paging", view.paging());
+        model.addAttribute("posts", view.posts());
+        model.addAttribute("postRows", feedRowCache.render(view.posts(), request, response));
         model.addAttribute("search", search);
+        model.addAttribute("query", phrase);
+        // only the main feed shows a total: matches and tag feeds are paged without counting them
+        model.addAttribute("postsCount", phrase.isEmpty() && search.isEmpty() ? postCountCache.getCount() : null);
+        model.addAttribute("tagCloud", topTagsCache.getTop(TAG_CLOUD_SIZE));
 
 
         return "posts";
     }
 
+    private FeedView getFeedView(String search, int pageSize, int pageNumber, String after) {
+        return feedCache.get(new FeedCacheKey(search, pageSize, pageNumber, after), () -> {
+            FeedPage page;
+            if (after != null) {
+                // an empty token starts cursor navigation from the newest post
+                FeedCursor cursor = after.isEmpty() ? null : FeedCursor.decode(after);
+                page = feedService.getPostsPage(search, pageSize, cursor);
+            } else {
+                page = feedService.getPostsPage(search, pageSize, pageNumber);
+            }
+            return toView(page);
+        });
+    }
+
+    private FeedView toView(FeedPage page) {
+        return new FeedView(postMapper.toFeedPostDtoList(page.posts()), page.paging());
+    }
 }
@@ -4,18 +4,30 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import ru.yandex.myblog.model.exception.CommentNotFoundException;
 import ru.yandex.myblog.model.exception.ImageNotFoundException;
+import ru.yandex.myblog.model.exception.InvalidCursorException;
 import ru.yandex.myblog.model.exception.PostNotFoundException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
     @ExceptionHandler({ImageNotFoundException.class, CommentNotFoundException.class, PostNotFoundException.class})
-    public ResponseEntity<String> handleImageNotFound(ImageNotFoundException ex) {
+    public ResponseEntity<String> handleNotFound(RuntimeException ex) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursor(InvalidCursorException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<String> handleMaxUploadSizeExceeded(MaxUploadSizeExceededException ex) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body("Image is too large");
+    }
+
 //    @ExceptionHandler(Exception.class)
 //    public ResponseEntity<String> handleGeneralException(Exception ex) {
 //        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Server error");
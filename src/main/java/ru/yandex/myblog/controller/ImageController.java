@@ -1,29 +1,173 @@
 package ru.yandex.myblog.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
 import ru.yandex.myblog.service.ImageService;
 
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
 @Controller
 @Slf4j
 @RequiredArgsConstructor
 public class ImageController {
 
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
     private final ImageService imageService;
 
     @GetMapping("/images/{post_id}")
     @ResponseBody
-    public ResponseEntity<byte[]> displayImage(@PathVariable(name = "post_id") Long postId) {
-        ImageBlob image = imageService.getForPost(postId);
-        return ResponseEntity.ok()
-                .contentType(MediaType.IMAGE_JPEG)
-                .body(image.getData());
+    public ResponseEntity<StreamingResponseBody> displayImage(
+            @PathVariable(name = "post_id") Long postId,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String rangeHeader,
+            WebRequest webRequest,
+            HttpServletRequest request) {
+        ImageInfo image = imageService.getInfoForPost(postId);
+        // the image behind this URL is replaced when the post is edited, so caches have to revalidate
+        return serve(variant(image, width), CacheControl.noCache(), rangeHeader, webRequest, request);
+    }
+
+    @GetMapping("/images/{post_id}/{sha256}")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> displayImageVersion(
+            @PathVariable(name = "post_id") Long postId,
+            @PathVariable(name = "sha256") String sha256,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String rangeHeader,
+            WebRequest webRequest,
+            HttpServletRequest request) {
+        ImageInfo image = imageService.getInfoForPost(postId);
+        if (!sha256.equals(image.getSha256())) {
+            // a page rendered before the image was replaced, send it to the current version
+            String location = request.getContextPath() + "/images/" + postId + "/" + image.getSha256()
+                    + (width != null ? "?w=" + width : "");
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(location))
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+        }
+
+        ImageInfo served = variant(image, width);
+        // while the variants are being generated the original only stands in for them and must not be cached for good
+        boolean pending = width != null && !(served instanceof ImageVariant) && !imageService.isVariantsDone(image);
+        return serve(served, pending ? CacheControl.noCache() : IMMUTABLE, rangeHeader, webRequest, request);
+    }
+
+    private ImageInfo variant(ImageInfo image, Integer width) {
+        return width == null ? image : imageService.getVariant(image, width);
+    }
+
+    private ResponseEntity<StreamingResponseBody> serve(ImageInfo image,
+                                                        CacheControl cacheControl,
+                                                        String rangeHeader,
+                                                        WebRequest webRequest,
+                                                        HttpServletRequest request) {
+        // also puts the ETag header on the response, whatever the outcome
+        if (webRequest.checkNotModified("\"" + image.getSha256() + "\"")) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        long size = image.getSize();
+
+        HttpRange range = singleRange(rangeHeader);
+        if (range == null) {
+            return ResponseEntity.ok()
+                    .contentType(contentType(image))
+                    .contentLength(size)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .body(body(image, 0, size, request));
+        }
+
+        long start = range.getRangeStart(size);
+        long end = range.getRangeEnd(size);
+        if (start >= size || start > end) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+
+        long from = start;
+        long length = end - start + 1;
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .contentType(contentType(image))
+                .contentLength(length)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                .body(body(image, from, length, request));
+    }
+
+    /**
+     * When the image is a file and Tomcat can sendfile, the body is left empty and the
+     * connector sends the file region straight from the page cache to the socket.
+     */
+    private StreamingResponseBody body(ImageInfo image, long offset, long length, HttpServletRequest request) {
+        Optional<Path> file = imageService.getFile(image);
+        if (file.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.get().toString());
+            request.setAttribute(SENDFILE_START, offset);
+            request.setAttribute(SENDFILE_END, offset + length);
+            return null;
+        }
+        return out -> imageService.writeTo(image, offset, length, out);
+    }
+
+    /**
+     * Returns the requested range, or null when the whole image should be sent:
+     * no header, a malformed one or several ranges, which are rare enough not to be worth a multipart response.
+     */
+    private static HttpRange singleRange(String rangeHeader) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.getFirst() : null;
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed Range header '{}'", rangeHeader);
+            return null;
+        }
+    }
+
+    private static MediaType contentType(ImageInfo image) {
+        if (image.getContentType() == null) {
+            return MediaType.IMAGE_JPEG;
+        }
+        try {
+            return MediaType.parseMediaType(image.getContentType());
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.IMAGE_JPEG;
+        }
     }
 }
@@ -1,12 +1,19 @@
 package ru.yandex.myblog.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import ru.yandex.myblog.model.domain.Post;
+import ru.yandex.myblog.model.dto.LikesCount;
+import ru.yandex.myblog.model.dto.PostVersion;
 import ru.yandex.myblog.service.PostService;
 
 @Slf4j
@@ -17,7 +24,16 @@ public class PostController {
     private final PostService postService;
 
     @GetMapping("/posts/{id}")
-    public String getPost(@PathVariable(name = "id") long id, Model model) {
+    public String getPost(@PathVariable(name = "id") long id,
+                          WebRequest webRequest,
+                          HttpServletResponse response,
+                          Model model) {
+        PostVersion version = postService.getPostVersion(id);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        if (webRequest.checkNotModified(version.eTag(), version.updatedAt().toEpochMilli())) {
+            return null;
+        }
+
         Post post = postService.getPost(id);
 
         model.addAttribute("post", post);
@@ -62,10 +78,17 @@ public class PostController {
         return "add-post";
     }
 
+    @PostMapping(value = "/posts/{id}/like", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public LikesCount likeInPlace(@PathVariable(name = "id") long id, @RequestParam(name = "like") boolean like) {
+        return new LikesCount(id, postService.likePost(id, like));
+    }
+
+    // the plain form post, for pages without JavaScript
     @PostMapping("/posts/{id}/like")
     public String like(@PathVariable(name = "id") long id, @RequestParam(name = "like") boolean like) {
-        Post post = postService.likePost(id, like);
-        return "redirect:/posts/"+post.getId();
+        postService.likePost(id, like);
+        return "redirect:/posts/"+id;
     }
 
     @PostMapping(value = "/posts/{id}/delete")
@@ -0,0 +1,24 @@
+package ru.yandex.myblog.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import ru.yandex.myblog.model.dto.TagCount;
+import ru.yandex.myblog.service.TopTagsCache;
+
+import java.util.List;
+
+@Controller
+@RequiredArgsConstructor
+public class TagController {
+
+    private final TopTagsCache topTagsCache;
+
+    @GetMapping("/tags/top")
+    @ResponseBody
+    public List<TagCount> getTopTags(@RequestParam(name = "limit", defaultValue = "20", required = false) int limit) {
+        return topTagsCache.getTop(limit);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.myblog.model.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Image metadata without the binary content, used for page rendering.
+ * The bytes themselves are only read by the image endpoint, from the
+ * {@link ru.yandex.myblog.repository.ImageStore} addressed by {@code sha256}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageInfo {
+
+    private long id;
+    private long postId;
+    private String fileName;
+    private long size;
+    private String contentType;
+    private String sha256;
+
+    public boolean isExists() {
+        return size > 0;
+    }
+}
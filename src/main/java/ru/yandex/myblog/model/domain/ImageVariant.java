@@ -0,0 +1,26 @@
+package ru.yandex.myblog.model.domain;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A downscaled copy of an uploaded image. {@code id} and {@code sha256} refer to the variant itself,
+ * {@code postId} and {@code fileName} are inherited from the image it was requested for.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class ImageVariant extends ImageInfo {
+
+    private String sourceSha256;
+    private int width;
+
+    public ImageVariant(long id, ImageInfo original, int width, long size, String contentType, String sha256) {
+        super(id, original.getPostId(), original.getFileName(), size, contentType, sha256);
+        this.sourceSha256 = original.getSha256();
+        this.width = width;
+    }
+}
@@ -16,9 +16,16 @@ public class Post {
     private long id;
     private String title;
     private String text;
+    private String preview;
     private int likesCount;
-
-    private ImageBlob image;
+    private int commentsCount;
+    private long version;
+    // likes clicked but not yet written, already included in likesCount
+    private int pendingLikes;
+    // matched fragments of the text, only for full-text search results
+    private String snippet;
+
+    private ImageInfo image;
     private List<Comment> comments = new ArrayList<>();
     private List<Tag> tags =new ArrayList<>();
 
@@ -42,6 +49,7 @@ public class Post {
                 ", title='" + title + '\'' +
                 ", text='" + text + '\'' +
                 ", likesCount=" + likesCount +
+                ", commentsCount=" + commentsCount +
                 '}';
     }
 
@@ -0,0 +1,7 @@
+package ru.yandex.myblog.model.dto;
+
+public record FeedCacheKey(
+    String tag,
+    int pageSize,
+    int pageNumber,
+    String cursor){};
@@ -0,0 +1,40 @@
+package ru.yandex.myblog.model.dto;
+
+import ru.yandex.myblog.model.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public record FeedCursor(Direction direction, long postId) {
+
+    public enum Direction {
+        OLDER, NEWER
+    }
+
+    public static FeedCursor olderThan(long postId) {
+        return new FeedCursor(Direction.OLDER, postId);
+    }
+
+    public static FeedCursor newerThan(long postId) {
+        return new FeedCursor(Direction.NEWER, postId);
+    }
+
+    public String encode() {
+        String raw = (direction == Direction.OLDER ? "o" : "n") + postId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static FeedCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            long postId = Long.parseLong(raw.substring(1));
+            return switch (raw.charAt(0)) {
+                case 'o' -> olderThan(postId);
+                case 'n' -> newerThan(postId);
+                default -> throw new InvalidCursorException("Invalid feed cursor " + token);
+            };
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidCursorException("Invalid feed cursor " + token);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.yandex.myblog.model.dto;
+
+import ru.yandex.myblog.model.domain.Post;
+
+import java.util.List;
+
+public record FeedPage(
+    List<Post> posts,
+    Paging paging){};
@@ -1,8 +1,6 @@
 package ru.yandex.myblog.model.dto;
 
 import lombok.Data;
-import ru.yandex.myblog.model.domain.Comment;
-
 import java.util.List;
 
 @Data
@@ -11,9 +9,14 @@ public class FeedPostDto {
     private long id;
     private String title;
     private String textPreview;
+    private String snippet;
     private int likesCount;
+    private int commentsCount;
+    private long version;
+    private int pendingLikes;
+    private boolean imagePresent;
+    private String imageSha256;
 
-    private List<Comment> comments;
     private List<String> tags;
 
 }
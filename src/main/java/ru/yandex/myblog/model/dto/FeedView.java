@@ -0,0 +1,7 @@
+package ru.yandex.myblog.model.dto;
+
+import java.util.List;
+
+public record FeedView(
+    List<FeedPostDto> posts,
+    Paging paging){};
@@ -0,0 +1,4 @@
+package ru.yandex.myblog.model.dto;
+
+public record LikesCount(long postId, int likesCount) {
+}
@@ -4,4 +4,16 @@ public record Paging (
     int pageNumber,
     int pageSize,
     boolean hasNext,
-    boolean hasPrevious){};
+    boolean hasPrevious,
+    boolean cursorBased,
+    String nextCursor,
+    String previousCursor){
+
+    public Paging(int pageNumber, int pageSize, boolean hasNext, boolean hasPrevious) {
+        this(pageNumber, pageSize, hasNext, hasPrevious, false, null, null);
+    }
+
+    public static Paging cursor(int pageSize, String nextCursor, String previousCursor) {
+        return new Paging(0, pageSize, nextCursor != null, previousCursor != null, true, nextCursor, previousCursor);
+    }
+};
@@ -0,0 +1,25 @@
+package ru.yandex.myblog.model.dto;
+
+import java.time.Instant;
+
+/**
+ * What a cached copy of the post page is validated against. Likes not yet written to
+ * the database are part of the page, so they are part of the version too.
+ */
+public record PostVersion(long postId, long version, Instant updatedAt, int pendingLikes) {
+
+    public PostVersion(long postId, long version, Instant updatedAt) {
+        this(postId, version, updatedAt, 0);
+    }
+
+    public PostVersion withPendingLikes(int pendingLikes) {
+        return new PostVersion(postId, version, updatedAt, pendingLikes);
+    }
+
+    public String eTag() {
+        if (pendingLikes == 0) {
+            return "\"" + postId + "-" + version + "\"";
+        }
+        return "\"" + postId + "-" + version + (pendingLikes > 0 ? "+" : "") + pendingLikes + "\"";
+    }
+}
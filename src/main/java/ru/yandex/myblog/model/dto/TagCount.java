@@ -0,0 +1,4 @@
+package ru.yandex.myblog.model.dto;
+
+public record TagCount(String name, int postCount) {
+}
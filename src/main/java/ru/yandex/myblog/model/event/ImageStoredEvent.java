@@ -0,0 +1,6 @@
+package ru.yandex.myblog.model.event;
+
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+public record ImageStoredEvent(ImageInfo image) {
+}
@@ -0,0 +1,9 @@
+package ru.yandex.myblog.model.event;
+
+import java.util.Set;
+
+/**
+ * Buffered likes of these posts were written to the database in one flush.
+ */
+public record LikesFlushedEvent(Set<Long> postIds) {
+}
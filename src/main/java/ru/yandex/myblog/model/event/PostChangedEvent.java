@@ -0,0 +1,31 @@
+package ru.yandex.myblog.model.event;
+
+import java.util.Set;
+
+public record PostChangedEvent(long postId, Type type, Set<String> tags) {
+
+    public enum Type {
+        CREATED(true),
+        UPDATED(true),
+        DELETED(true),
+        COMMENTED(false);
+
+        private final boolean membershipChanged;
+
+        Type(boolean membershipChanged) {
+            this.membershipChanged = membershipChanged;
+        }
+
+        /**
+         * Whether the change can move posts between feed pages, as opposed to
+         * only changing what is displayed for this post.
+         */
+        public boolean isMembershipChanged() {
+            return membershipChanged;
+        }
+    }
+
+    public static PostChangedEvent of(long postId, Type type) {
+        return new PostChangedEvent(postId, type, Set.of());
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.myblog.model.exception;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -14,17 +14,15 @@ import java.util.stream.Collectors;
 @Mapper(componentModel = MappingConstants.ComponentModel.SPRING)
 public interface PostMapper {
 
-    @Mapping(target = "textPreview", expression = "java(shortText(post.getText()))")
+    @Mapping(target = "textPreview", source = "preview")
     @Mapping(target = "tags", expression = "java(convertTags(post.getTags()))")
+    @Mapping(target = "imagePresent", expression = "java(post.getImage() != null && post.getImage().isExists())")
+    @Mapping(target = "imageSha256", source = "image.sha256")
     FeedPostDto toFeedPostDto(Post post);
 
     List<FeedPostDto> toFeedPostDtoList(List<Post> posts);
 
 
-    default String shortText(String text) {
-        return text.substring(0, Math.min(text.length(), 300));
-    }
-
     default List<String> convertTags(List<Tag> tags){
         if (tags == null ) return new ArrayList<>();
         return tags.stream().map(Tag::getName).collect(Collectors.toList());
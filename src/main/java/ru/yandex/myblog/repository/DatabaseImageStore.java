@@ -0,0 +1,55 @@
+package ru.yandex.myblog.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps image content in the {@code image_contents.data} bytea column and reads it back in slices.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "myblog.image-store.type", havingValue = "database", matchIfMissing = true)
+public class DatabaseImageStore implements ImageStore {
+
+    static final int CHUNK_SIZE = 128 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcImageRepo imageRepo;
+
+    @Override
+    public void store(ImageInfo image, InputStream content) {
+        jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement("update image_contents set data = ? where sha256 = ?");
+            statement.setBinaryStream(1, content, image.getSize());
+            statement.setString(2, image.getSha256());
+            return statement;
+        });
+    }
+
+    @Override
+    public void copyTo(ImageInfo image, long offset, long length, OutputStream out) throws IOException {
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            int chunkLength = (int) Math.min(CHUNK_SIZE, end - position);
+            byte[] chunk = imageRepo.readChunk(image.getSha256(), position, chunkLength);
+            if (chunk.length == 0) {
+                throw new IOException("Image " + image.getId() + " ended at " + position + " of " + end);
+            }
+            out.write(chunk);
+            position += chunk.length;
+        }
+    }
+
+    @Override
+    public void remove(ImageInfo image) {
+        // the content went away together with its image_contents row
+    }
+}
@@ -0,0 +1,154 @@
+package ru.yandex.myblog.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Keeps image content in a content-addressed directory tree: {@code <root>/ab/cd/abcd...} by SHA-256.
+ * Equal images share one file, and a file never changes once written. Content not yet moved out of
+ * {@code image_contents.data} by the migrator is read from there.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "myblog.image-store.type", havingValue = "filesystem")
+public class FileSystemImageStore implements ImageStore {
+
+    private final Path root;
+    private final Path tmp;
+    private final JdbcImageRepo imageRepo;
+
+    public FileSystemImageStore(@Value("${myblog.image-store.filesystem.root:data/images}") Path root,
+                                JdbcImageRepo imageRepo) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.tmp = Files.createDirectories(this.root.resolve("tmp"));
+        this.imageRepo = imageRepo;
+    }
+
+    @Override
+    public void store(ImageInfo image, InputStream content) throws IOException {
+        Path target = path(image.getSha256());
+        // the caller holds the content lock, so a delete cannot remove this file before the upload commits
+        if (Files.exists(target)) {
+            return;
+        }
+
+        Path temp = Files.createTempFile(tmp, "upload", ".part");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(content, digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (!actual.equals(image.getSha256())) {
+                throw new IOException("Content of image " + image.getId() + " does not match its hash " + image.getSha256());
+            }
+
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // stored concurrently by another upload of the same content
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void copyTo(ImageInfo image, long offset, long length, OutputStream out) throws IOException {
+        Path file = path(image.getSha256());
+        long position = offset;
+        long end = offset + length;
+        if (!Files.exists(file)) {
+            position = copyInlineData(image, position, end, out);
+            if (position == end) {
+                return;
+            }
+            // the migrator moved the content to the file and cleared it in between, the file has the same bytes
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("Image " + image.getId() + " ended at " + position + " of " + end);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    @Override
+    public InputStream open(ImageInfo image) throws IOException {
+        Path file = path(image.getSha256());
+        if (!Files.exists(file)) {
+            return ImageStore.super.open(image);
+        }
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void remove(ImageInfo image) {
+        try {
+            Files.deleteIfExists(path(image.getSha256()));
+        } catch (IOException e) {
+            log.warn("Could not remove image file {}", image.getSha256(), e);
+        }
+    }
+
+    @Override
+    public Optional<Path> file(ImageInfo image) {
+        return Optional.of(path(image.getSha256())).filter(Files::exists);
+    }
+
+    /**
+     * Copies what the database still holds of the range, returns the position where that data ended.
+     */
+    private long copyInlineData(ImageInfo image, long position, long end, OutputStream out) throws IOException {
+        while (position < end) {
+            byte[] chunk = imageRepo.readChunk(image.getSha256(), position, (int) Math.min(DatabaseImageStore.CHUNK_SIZE, end - position));
+            if (chunk.length == 0) {
+                break;
+            }
+            out.write(chunk);
+            position += chunk.length;
+        }
+        return position;
+    }
+
+    Path path(String sha256) {
+        if (sha256 == null || !sha256.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Not a SHA-256 hex digest: " + sha256);
+        }
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
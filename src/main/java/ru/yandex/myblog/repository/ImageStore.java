@@ -0,0 +1,49 @@
+package ru.yandex.myblog.repository;
+
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Storage of image content, addressed by SHA-256. Metadata and reference counts always live in the database,
+ * the backend is chosen with {@code myblog.image-store.type}.
+ */
+public interface ImageStore {
+
+    /**
+     * Stores content referenced for the first time, its {@code image_contents} row is already inserted.
+     */
+    void store(ImageInfo image, InputStream content) throws IOException;
+
+    /**
+     * Copies {@code length} bytes starting at {@code offset} to {@code out}.
+     */
+    void copyTo(ImageInfo image, long offset, long length, OutputStream out) throws IOException;
+
+    /**
+     * Opens the whole content for reading. Backends without a file read it into memory.
+     */
+    default InputStream open(ImageInfo image) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(Math.toIntExact(image.getSize()));
+        copyTo(image, 0, image.getSize(), content);
+        return new ByteArrayInputStream(content.toByteArray());
+    }
+
+    /**
+     * Releases content no image or variant refers to any more, its row is already deleted.
+     */
+    void remove(ImageInfo image);
+
+    /**
+     * The file holding the content, when the backend keeps one, so it can be sent without copying through the heap.
+     */
+    default Optional<Path> file(ImageInfo image) {
+        return Optional.empty();
+    }
+}
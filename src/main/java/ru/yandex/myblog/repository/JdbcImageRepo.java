@@ -2,31 +2,174 @@ package ru.yandex.myblog.repository;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
-import org.springframework.web.multipart.MultipartFile;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
 
-import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Repository
 @RequiredArgsConstructor
 public class JdbcImageRepo {
 
+    private static final RowMapper<ImageInfo> IMAGE_INFO_ROW_MAPPER = (rs, rowNum) -> new ImageInfo(
+            rs.getLong("id"),
+            rs.getLong("post_id"),
+            rs.getString("file_name"),
+            rs.getLong("size"),
+            rs.getString("content_type"),
+            rs.getString("sha256")
+    );
+
     private final JdbcTemplate jdbcTemplate;
 
-    public boolean save(long postId, MultipartFile file) {
-        byte[] data;
-        try {
-            data = file.getBytes();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+    /**
+     * Inserts the image metadata; the content is written separately by the active {@link ImageStore}.
+     */
+    public long save(long postId, String fileName, String contentType, String sha256, long size) {
+        Long imageId = jdbcTemplate.queryForObject(
+                "insert into images (post_id, file_name, content_type, sha256, size) values(?, ?, ?, ?, ?) returning id",
+                Long.class,
+                postId, fileName, contentType, sha256, size
+        );
+        if (imageId == null) {
+            throw new IllegalArgumentException("Error while saving image");
+        }
+        return imageId;
+    }
+
+    /**
+     * Adds a reference to the content and returns the new count: 1 means the bytes are not stored yet.
+     * The row stays locked until the transaction ends, so a concurrent release of the same content waits.
+     */
+    public int acquireContent(String sha256, long size) {
+        Integer refCount = jdbcTemplate.queryForObject("""
+                        insert into image_contents (sha256, size, ref_count) values (?, ?, 1)
+                        on conflict (sha256) do update set ref_count = image_contents.ref_count + 1
+                        returning ref_count
+                        """,
+                Integer.class,
+                sha256, size
+        );
+        if (refCount == null) {
+            throw new IllegalArgumentException("Error while referencing image content");
+        }
+        return refCount;
+    }
+
+    /**
+     * Drops a reference to the content and returns how many are left.
+     */
+    public int releaseContent(String sha256) {
+        List<Integer> refCount = jdbcTemplate.queryForList(
+                "update image_contents set ref_count = ref_count - 1 where sha256 = ? returning ref_count",
+                Integer.class, sha256);
+        return refCount.isEmpty() ? 0 : refCount.getFirst();
+    }
+
+    /**
+     * Deletes unreferenced content together with the variants made from it.
+     */
+    public void deleteContent(String sha256) {
+        jdbcTemplate.update("delete from image_contents where sha256 = ? and ref_count <= 0", sha256);
+    }
+
+    /**
+     * Serializes storing and removing the bytes of one content until the transaction ends:
+     * an upload that has not committed its reference yet must not lose its file to a delete.
+     */
+    public void lockContent(String sha256) {
+        jdbcTemplate.queryForList("select pg_advisory_xact_lock(hashtext(?))", sha256);
+    }
+
+    public boolean isReferenced(String sha256) {
+        Boolean referenced = jdbcTemplate.queryForObject(
+                "select exists(select 1 from image_contents where sha256 = ?)", Boolean.class, sha256);
+        return Boolean.TRUE.equals(referenced);
+    }
+
+    public long saveVariant(ImageInfo image, int width, String contentType, String sha256, long size) {
+        Long variantId = jdbcTemplate.queryForObject(
+                "insert into image_variants (source_sha256, width, content_type, sha256, size) values(?, ?, ?, ?, ?) returning id",
+                Long.class,
+                image.getSha256(), width, contentType, sha256, size
+        );
+        if (variantId == null) {
+            throw new IllegalArgumentException("Error while saving image variant");
         }
-        jdbcTemplate.update(
-                "insert into images (post_id, file_name, data) values(?, ?, ?)",
-                postId, file.getOriginalFilename(), data
+        return variantId;
+    }
+
+    /**
+     * Variants made from the content of the image, narrowest first.
+     */
+    public List<ImageVariant> getVariants(ImageInfo image) {
+        return jdbcTemplate.query(
+                "SELECT id, width, size, content_type, sha256 FROM image_variants WHERE source_sha256 = ? ORDER BY width",
+                (rs, rowNum) -> new ImageVariant(
+                        rs.getLong("id"),
+                        image,
+                        rs.getInt("width"),
+                        rs.getLong("size"),
+                        rs.getString("content_type"),
+                        rs.getString("sha256")
+                ),
+                image.getSha256()
         );
-        return true;
+    }
+
+    public void markVariantsDone(String sha256) {
+        jdbcTemplate.update("update image_contents set variants_done = true where sha256 = ?", sha256);
+    }
+
+    public boolean areVariantsDone(String sha256) {
+        Boolean done = jdbcTemplate.queryForObject(
+                "select exists(select 1 from image_contents where sha256 = ? and variants_done)", Boolean.class, sha256);
+        return Boolean.TRUE.equals(done);
+    }
+
+    /**
+     * Images whose content has not been through variant generation yet, in id order.
+     */
+    public List<ImageInfo> findImagesWithPendingVariants(long afterId, int limit) {
+        return jdbcTemplate.query(
+                """
+                        SELECT i.id, i.post_id, i.file_name, i.size, i.content_type, i.sha256 FROM images i
+                        JOIN image_contents c ON c.sha256 = i.sha256
+                        WHERE NOT c.variants_done AND i.id > ?
+                        ORDER BY i.id LIMIT ?
+                        """,
+                IMAGE_INFO_ROW_MAPPER,
+                afterId, limit);
+    }
+
+    /**
+     * Hashes of contents whose bytes are still kept in the data column, in hash order.
+     */
+    public List<String> findContentsWithInlineData(String afterSha256, int limit) {
+        return jdbcTemplate.queryForList(
+                "select sha256 from image_contents where data is not null and sha256 > ? order by sha256 limit ?",
+                String.class, afterSha256, limit);
+    }
+
+    /**
+     * The whole bytea of the content, or null when it is cleared or the content is already deleted.
+     */
+    public byte[] readInlineData(String sha256) {
+        List<byte[]> data = jdbcTemplate.query(
+                "select data from image_contents where sha256 = ?",
+                (rs, rowNum) -> rs.getBytes("data"),
+                sha256);
+        return data.isEmpty() ? null : data.getFirst();
+    }
+
+    public void clearInlineData(String sha256) {
+        jdbcTemplate.update("update image_contents set data = null where sha256 = ?", sha256);
     }
 
     public boolean delete(long postId) {
@@ -34,16 +177,43 @@ public class JdbcImageRepo {
         return update > 0;
     }
 
-    public ImageBlob getByPostId(long postId) {
-        return jdbcTemplate.queryForObject(
-                "SELECT id, post_id, file_name, data FROM images WHERE post_id = ?",
-                (rs, rowNum) -> new ImageBlob(
-                        rs.getLong("id"),
-                        rs.getLong("post_id"),
-                        rs.getString("file_name"),
-                        rs.getBytes("data")
-                ),
+    /**
+     * Reads {@code length} bytes of the content starting at zero-based {@code offset}.
+     * Returns fewer bytes at the end of the data and an empty array when the content or its data is gone.
+     * The bytes under a hash never change, so the chunks of one read cannot mix two versions of an image:
+     * a replaced image has another hash, and its old content reads as empty once released.
+     */
+    public byte[] readChunk(String sha256, long offset, int length) {
+        List<byte[]> chunks = jdbcTemplate.query(
+                "SELECT substring(data from ? for ?) AS chunk FROM image_contents WHERE sha256 = ?",
+                (rs, rowNum) -> rs.getBytes("chunk"),
+                Math.toIntExact(offset + 1), length, sha256
+        );
+        return chunks.isEmpty() || chunks.getFirst() == null ? new byte[0] : chunks.getFirst();
+    }
+
+    public Optional<ImageInfo> getInfoByPostId(long postId) {
+        List<ImageInfo> images = jdbcTemplate.query(
+                "SELECT id, post_id, file_name, size, content_type, sha256 FROM images WHERE post_id = ?",
+                IMAGE_INFO_ROW_MAPPER,
                 postId
         );
+        return images.stream().findFirst();
+    }
+
+    public Map<Long, ImageInfo> getInfoByPostIds(Collection<Long> postIds) {
+        Map<Long, ImageInfo> imagesByPost = new HashMap<>();
+        if (postIds.isEmpty()) {
+            return imagesByPost;
+        }
+
+        jdbcTemplate.query(
+                "SELECT id, post_id, file_name, size, content_type, sha256 FROM images WHERE post_id = any(?)",
+                rs -> {
+                    ImageInfo image = IMAGE_INFO_ROW_MAPPER.mapRow(rs, 0);
+                    imagesByPost.put(image.getPostId(), image);
+                },
+                new Object[]{postIds.toArray(Long[]::new)});
+        return imagesByPost;
     }
 }
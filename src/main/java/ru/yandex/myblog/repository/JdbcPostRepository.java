@@ -1,106 +1,279 @@
 package ru.yandex.myblog.repository;
 
-import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.yandex.myblog.model.domain.Post;
+import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.PostVersion;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Repository
 @RequiredArgsConstructor
 public class JdbcPostRepository {
 
+    private static final String BUMP_VERSION = "version = version + 1, updated_at = now()";
+
+    /**
+     * Marks around the matched words in search snippets. PostService strips them from posted
+     * titles and texts, so the snippet can be escaped as a whole and the marks replaced afterwards.
+     */
+    public static final String MATCH_START = "\u0002";
+    public static final String MATCH_END = "\u0003";
+    private static final String HEADLINE_OPTIONS = "StartSel=" + MATCH_START + ", StopSel=" + MATCH_END
+            + ", MaxFragments=2, MinWords=8, MaxWords=20, FragmentDelimiter=\" ... \"";
+
+    private static final RowMapper<Post> POST_ROW_MAPPER = (rs, rowNum) -> {
+        Post post = new Post(
+                rs.getLong("id"),
+                rs.getString("title"),
+                rs.getString("text"),
+                rs.getInt("likesCount")
+        );
+        post.setCommentsCount(rs.getInt("comment_count"));
+        return post;
+    };
+
+    private static final RowMapper<Post> FEED_POST_ROW_MAPPER = (rs, rowNum) -> {
+        Post post = new Post(rs.getLong("id"), rs.getString("title"));
+        post.setPreview(rs.getString("preview"));
+        post.setLikesCount(rs.getInt("likesCount"));
+        post.setCommentsCount(rs.getInt("comment_count"));
+        post.setVersion(rs.getLong("version"));
+        return post;
+    };
 
     private final JdbcTemplate jdbcTemplate;
 
     public List<Post> getPosts(int offset, int limit) {
         return jdbcTemplate.query(
-                "select id, title, text, likesCount from posts order by id desc limit ? offset ?",
-                (rs, rowNum) -> new Post(
-                        rs.getLong("id"),
-                        rs.getString("title"),
-                        rs.getString("text"),
-                        rs.getInt("likesCount")
-                ),
+                "select id, title, preview, likesCount, comment_count, version from posts order by id desc limit ? offset ?",
+                FEED_POST_ROW_MAPPER,
                 limit, offset);
     }
 
-    public List<Post> getPostsByTag(@NonNull String tag, int offset, int limit) {
+    public List<Post> getPostsByTag(long tagId, int offset, int limit) {
         return jdbcTemplate.query(
                 """
-                        select p.id, p.title, p.text, p.likesCount from posts p
-                        left join posts_tags pt on p.id = pt.post_id
-                        left join tags t on pt.tag_id = t.id
-                        where t.name = ?
-                        group by p.id
-                        order by p.id desc limit ? offset ?
+                        select p.id, p.title, p.preview, p.likesCount, p.comment_count, p.version from posts p
+                        where p.id in (
+                            select pt.post_id from posts_tags pt
+                            where pt.tag_id = ?
+                            order by pt.post_id desc limit ? offset ?
+                        )
+                        order by p.id desc
                         """,
-                (rs, rowNum) -> new Post(
-                        rs.getLong("id"),
-                        rs.getString("title"),
-                        rs.getString("text"),
-                        rs.getInt("likesCount")
-                ),
-                tag, limit, offset);
+                FEED_POST_ROW_MAPPER,
+                tagId, limit, offset);
     }
 
-    public Integer getTotalPostsCount(){
-        return jdbcTemplate.queryForObject("select count(*) from posts", Integer.class);
+    /**
+     * Posts matching the search phrase, best ranked first, optionally only those with the tag.
+     * Snippets are cut only from the page returned, as ts_headline parses the whole text.
+     */
+    public List<Post> searchPosts(String phrase, Long tagId, int offset, int limit) {
+        String tagFilter = tagId == null ? "" : "and exists (select 1 from posts_tags pt where pt.post_id = p.id and pt.tag_id = ?)";
+        List<Object> args = new ArrayList<>(List.of(HEADLINE_OPTIONS, phrase));
+        if (tagId != null) {
+            args.add(tagId);
+        }
+        args.add(limit);
+        args.add(offset);
+        return jdbcTemplate.query(
+                """
+                        select id, title, preview, likesCount, comment_count, version, ts_headline('russian', text, query, ?) as snippet
+                        from (
+                            select p.id, p.title, p.preview, p.text, p.likesCount, p.comment_count, p.version, q.query,
+                                   ts_rank(p.search_vector, q.query) as rank
+                            from posts p, websearch_to_tsquery('russian', ?) q(query)
+                            where p.search_vector @@ q.query %s
+                            order by rank desc, p.id desc
+                            limit ? offset ?
+                        ) found
+                        order by rank desc, id desc
+                        """.formatted(tagFilter),
+                (rs, rowNum) -> {
+                    Post post = FEED_POST_ROW_MAPPER.mapRow(rs, rowNum);
+                    post.setSnippet(rs.getString("snippet"));
+                    return post;
+                },
+                args.toArray());
     }
 
-    public Integer getTotalPostsCount(String tag) {
-        return jdbcTemplate.queryForObject(
+    public List<Post> getPostsOlderThan(long postId, int limit) {
+        return jdbcTemplate.query(
+                "select id, title, preview, likesCount, comment_count, version from posts where id < ? order by id desc limit ?",
+                FEED_POST_ROW_MAPPER,
+                postId, limit);
+    }
+
+    public List<Post> getPostsNewerThan(long postId, int limit) {
+        return jdbcTemplate.query(
                 """
-                    select count(distinct p.id) from posts p
-                    left join posts_tags pt on p.id = pt.post_id
-                    left join tags t on pt.tag_id = t.id
-                    where t.name = ?
-                    """,
-                Integer.class,
-                tag);
+                        select * from (
+                            select id, title, preview, likesCount, comment_count, version from posts
+                            where id > ?
+                            order by id asc limit ?
+                        ) newer
+                        order by id desc
+                        """,
+                FEED_POST_ROW_MAPPER,
+                postId, limit);
+    }
+
+    public List<Post> getPostsByTagOlderThan(long tagId, long postId, int limit) {
+        return jdbcTemplate.query(
+                """
+                        select p.id, p.title, p.preview, p.likesCount, p.comment_count, p.version from posts p
+                        where p.id in (
+                            select pt.post_id from posts_tags pt
+                            where pt.tag_id = ? and pt.post_id < ?
+                            order by pt.post_id desc limit ?
+                        )
+                        order by p.id desc
+                        """,
+                FEED_POST_ROW_MAPPER,
+                tagId, postId, limit);
+    }
+
+    public List<Post> getPostsByTagNewerThan(long tagId, long postId, int limit) {
+        return jdbcTemplate.query(
+                """
+                        select p.id, p.title, p.preview, p.likesCount, p.comment_count, p.version from posts p
+                        where p.id in (
+                            select pt.post_id from posts_tags pt
+                            where pt.tag_id = ? and pt.post_id > ?
+                            order by pt.post_id asc limit ?
+                        )
+                        order by p.id desc
+                        """,
+                FEED_POST_ROW_MAPPER,
+                tagId, postId, limit);
+    }
+
+    public Integer getTotalPostsCount(){
+        return jdbcTemplate.queryForObject("select count(*) from posts", Integer.class);
     }
 
 
 
     public Optional<Post> findById(Long id) {
         List<Post> posts = jdbcTemplate.query(
-                "select id, title, text, likesCount from posts where id = ?",
-                (rs, rowNum) -> new Post(
-                        rs.getLong("id"),
-                        rs.getString("title"),
-                        rs.getString("text"),
-                        rs.getInt("likesCount")
-                ),
+                "select id, title, text, likesCount, comment_count from posts where id = ?",
+                POST_ROW_MAPPER,
                 id);
         return posts.stream().findFirst();
     }
 
-    public void likePost(Long id) {
-        jdbcTemplate.update("update posts set likesCount = likescount + 1 where id = ?", id);
+    public Optional<PostVersion> findVersionById(long id) {
+        List<PostVersion> versions = jdbcTemplate.query(
+                "select version, updated_at from posts where id = ?",
+                (rs, rowNum) -> new PostVersion(id, rs.getLong("version"), rs.getTimestamp("updated_at").toInstant()),
+                id);
+        return versions.stream().findFirst();
+    }
+
+    public Optional<Integer> findLikesCount(long id) {
+        List<Integer> counts = jdbcTemplate.queryForList("select likesCount from posts where id = ?", Integer.class, id);
+        return counts.stream().findFirst();
     }
 
-    public void unlikePost(Long id) {
-        jdbcTemplate.update("update posts set likesCount = likescount - 1 where id = ? and likesCount > 0", id);
+    /**
+     * Applies accumulated like deltas in one batch; a count never drops below zero.
+     */
+    public void addLikes(Map<Long, Long> deltas) {
+        List<Object[]> args = deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey(), delta.getValue()})
+                .toList();
+        jdbcTemplate.batchUpdate(
+                "update posts set likesCount = greatest(likesCount + ?, 0), " + BUMP_VERSION
+                        + " where id = ? and greatest(likesCount + ?, 0) <> likesCount",
+                args);
     }
 
-    public long save(Post p) {
-        Long postId = jdbcTemplate.queryForObject("insert into posts(title, text, likesCount) values(?, ?, ?) returning id",
-                Long.class,
-                p.getTitle(), p.getText(), p.getLikesCount());
+    public void changeCommentsCount(long id, int delta) {
+        jdbcTemplate.update("update posts set comment_count = comment_count + ?, " + BUMP_VERSION + " where id = ?", delta, id);
+    }
+
+    /**
+     * Marks the post as changed for something stored outside the posts row, e.g. an edited comment.
+     */
+    public void touch(long id) {
+        jdbcTemplate.update("update posts set " + BUMP_VERSION + " where id = ?", id);
+    }
+
+    /**
+     * Inserts the post, upserts its tags and binds them in one statement. The upsert counts the
+     * post on existing tags, which also makes RETURNING report them, even those committed by a
+     * concurrent post after this statement started.
+     */
+    public Post saveWithTags(String title, String text, String preview, Collection<String> tagNames) {
+        List<Tag> tags = new ArrayList<>();
+        Long postId = jdbcTemplate.query(
+                """
+                        with new_post as (
+                            insert into posts(title, text, preview, likesCount) values (?, ?, ?, 0)
+                            returning id
+                        ), upserted as (
+                            insert into tags(name, post_count) select distinct unnest(?::text[]), 1
+                            on conflict (name) do update set post_count = tags.post_count + 1
+                            returning id, name
+                        ), bound as (
+                            insert into posts_tags(post_id, tag_id)
+                            select p.id, t.id from new_post p cross join upserted t
+                        )
+                        select p.id as post_id, t.id as tag_id, t.name from new_post p left join upserted t on true
+                        """,
+                rs -> {
+                    Long id = null;
+                    while (rs.next()) {
+                        id = rs.getLong("post_id");
+                        String name = rs.getString("name");
+                        if (name != null) {
+                            tags.add(new Tag(rs.getLong("tag_id"), name));
+                        }
+                    }
+                    return id;
+                },
+                title, text, preview, tagNames.toArray(String[]::new));
 
         if (postId == null) {
             throw new IllegalArgumentException("Error while saving post");
         }
-        return postId;
+        Post post = new Post(postId, title, text, 0);
+        post.setPreview(preview);
+        post.setTags(tags);
+        return post;
     }
 
-    public void update(@NonNull Post post) {
-        jdbcTemplate.update("update posts set title = ?, text = ? where id = ?",
-                post.getTitle(), post.getText(), post.getId()
-        );
+    /**
+     * Writes only the columns given, a null keeps the stored value. A long text that is not
+     * passed is not written again, neither to the table nor to its TOAST storage.
+     */
+    public void update(long id, String title, String text, String preview) {
+        List<String> columns = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (title != null) {
+            columns.add("title = ?");
+            args.add(title);
+        }
+        if (text != null) {
+            columns.add("text = ?");
+            args.add(text);
+        }
+        if (preview != null) {
+            columns.add("preview = ?");
+            args.add(preview);
+        }
+        columns.add(BUMP_VERSION);
+        args.add(id);
+        jdbcTemplate.update("update posts set " + String.join(", ", columns) + " where id = ?", args.toArray());
     }
 
 
@@ -4,9 +4,15 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.TagCount;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Repository
 @RequiredArgsConstructor
@@ -15,14 +21,38 @@ public class JdbcTagRepository {
 
     private final JdbcTemplate jdbcTemplate;
 
-    public List<Tag> getTagsForPost(long postId) {
+    public List<Tag> findAll() {
+        return jdbcTemplate.query("select id, name from tags",
+                (rs, rowNum) -> new Tag(rs.getLong("id"), rs.getString("name")));
+    }
 
-        List<Tag> tags = jdbcTemplate.query(
-                "select id, name from tags where id in (select tag_id from posts_tags where post_id = ?)",
+    public List<Tag> getTagsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("select id, name from tags where id = any(?)",
                 (rs, rowNum) -> new Tag(rs.getLong("id"), rs.getString("name")),
-                postId);
+                new Object[]{ids.toArray(Long[]::new)});
+    }
+
+    public List<Long> getTagIdsForPost(long postId) {
+        return jdbcTemplate.queryForList("select tag_id from posts_tags where post_id = ? order by tag_id", Long.class, postId);
+    }
+
+    public Map<Long, List<Long>> getTagIdsForPosts(Collection<Long> postIds) {
+        Map<Long, List<Long>> tagIdsByPost = new HashMap<>();
+        if (postIds.isEmpty()) {
+            return tagIdsByPost;
+        }
 
-        return tags;
+        jdbcTemplate.query(
+                "select post_id, tag_id from posts_tags where post_id = any(?) order by tag_id",
+                rs -> {
+                    tagIdsByPost.computeIfAbsent(rs.getLong("post_id"), id -> new ArrayList<>())
+                            .add(rs.getLong("tag_id"));
+                },
+                new Object[]{postIds.toArray(Long[]::new)});
+        return tagIdsByPost;
     }
 
     public void saveBatch(List<Tag> tags) {
@@ -37,14 +67,33 @@ public class JdbcTagRepository {
         );
     }
 
+    /**
+     * Binds the tags and counts the post for each binding that did not exist yet.
+     */
     public void bindTagsToPost(long postId, List<Tag> tags) {
-        jdbcTemplate.batchUpdate("INSERT INTO posts_tags (post_id, tag_id) values (?,?)",
-                tags,
-                tags.size(),
-                (ps, argument) -> {
-                    ps.setLong(1, postId);
-                    ps.setLong(2, argument.getId());
-                });
+        if (tags.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(
+                """
+                        with bound as (
+                            insert into posts_tags (post_id, tag_id) select ?, unnest(?::bigint[])
+                            on conflict do nothing
+                            returning tag_id
+                        )
+                        update tags set post_count = post_count + 1 where id in (select tag_id from bound)
+                        """,
+                postId, tags.stream().map(Tag::getId).toArray(Long[]::new));
+    }
+
+    /**
+     * The most used tags, read in index order so the cost depends on the limit only.
+     */
+    public List<TagCount> getTopTags(int limit) {
+        return jdbcTemplate.query(
+                "select name, post_count from tags where post_count > 0 order by post_count desc, name limit ?",
+                (rs, rowNum) -> new TagCount(rs.getString("name"), rs.getInt("post_count")),
+                limit);
     }
 
     public List<Tag> getTagsByNames(List<String> tagNames) {
@@ -59,7 +108,35 @@ public class JdbcTagRepository {
         return query;
     }
 
+    public Optional<Long> findIdByName(String name) {
+        List<Long> ids = jdbcTemplate.queryForList("select id from tags where name = ?", Long.class, name);
+        return ids.stream().findFirst();
+    }
+
+    public int unbindTagsFromPost(long postId, Collection<Long> tagIds) {
+        if (tagIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(
+                """
+                        with removed as (
+                            delete from posts_tags where post_id = ? and tag_id = any(?)
+                            returning tag_id
+                        )
+                        update tags set post_count = post_count - 1 where id in (select tag_id from removed)
+                        """,
+                postId, tagIds.toArray(Long[]::new));
+    }
+
     public int deleteTagToPostConnections(long postId) {
-        return jdbcTemplate.update("delete from posts_tags where post_id = ?", postId);
+        return jdbcTemplate.update(
+                """
+                        with removed as (
+                            delete from posts_tags where post_id = ?
+                            returning tag_id
+                        )
+                        update tags set post_count = post_count - 1 where id in (select tag_id from removed)
+                        """,
+                postId);
     }
 }
@@ -2,11 +2,14 @@ package ru.yandex.myblog.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.myblog.model.domain.Comment;
+import ru.yandex.myblog.model.event.PostChangedEvent;
 import ru.yandex.myblog.model.exception.CommentNotFoundException;
 import ru.yandex.myblog.repository.JdbcCommentRepository;
+import ru.yandex.myblog.repository.JdbcPostRepository;
 
 @Slf4j
 @Service
@@ -15,12 +18,16 @@ import ru.yandex.myblog.repository.JdbcCommentRepository;
 public class CommentService {
 
     private final JdbcCommentRepository commentRepo;
+    private final JdbcPostRepository postRepo;
+    private final ApplicationEventPublisher eventPublisher;
 
     public void save(long postId,String commentText ) {
         Comment comment = new Comment();
         comment.setPostId(postId);
         comment.setText(commentText);
         commentRepo.save(comment);
+        postRepo.changeCommentsCount(postId, 1);
+        eventPublisher.publishEvent(PostChangedEvent.of(postId, PostChangedEvent.Type.COMMENTED));
     }
 
     public void update(long commentId, long postId, String commentText ) {
@@ -30,6 +37,7 @@ public class CommentService {
             log.error("Comment update failed, cause comment {} for post {} was not found", commentId, postId);
             throw new CommentNotFoundException("Comment cannot be updated");
         }
+        postRepo.touch(postId);
     }
 
     public void delete(long commentId, long postId) {
@@ -38,6 +46,8 @@ public class CommentService {
             log.error("Comment delete failed, cause comment {} was not found", commentId);
             throw new CommentNotFoundException("Comment cannot be deleted");
         }
+        postRepo.changeCommentsCount(postId, -1);
+        eventPublisher.publishEvent(PostChangedEvent.of(postId, PostChangedEvent.Type.COMMENTED));
     }
 
 }
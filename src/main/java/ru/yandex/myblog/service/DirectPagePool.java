@@ -0,0 +1,62 @@
+package ru.yandex.myblog.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Fixed-size pages of native memory cut from direct slabs. Slabs are allocated only up to the
+ * budget and never handed back to the collector: a page given back is reused by the next taker,
+ * so the native memory in use never exceeds the budget, whenever the GC happens to run.
+ */
+final class DirectPagePool {
+
+    static final int PAGE_SIZE = 8 * 1024;
+    private static final int PAGES_PER_SLAB = 128;
+
+    private final int maxPages;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private int allocatedPages;
+
+    DirectPagePool(long maxBytes) {
+        this.maxPages = Math.toIntExact(maxBytes / PAGE_SIZE);
+    }
+
+    /**
+     * Takes enough pages to hold {@code size} bytes, or returns null when the budget is used up.
+     */
+    synchronized ByteBuffer[] take(long size) {
+        int count = pages(size);
+        while (free.size() < count && allocatedPages < maxPages) {
+            int slabPages = Math.min(PAGES_PER_SLAB, maxPages - allocatedPages);
+            ByteBuffer slab = ByteBuffer.allocateDirect(slabPages * PAGE_SIZE);
+            for (int i = 0; i < slabPages; i++) {
+                free.push(slab.slice(i * PAGE_SIZE, PAGE_SIZE));
+            }
+            allocatedPages += slabPages;
+        }
+        if (free.size() < count) {
+            return null;
+        }
+
+        ByteBuffer[] pages = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            pages[i] = free.pop().clear();
+        }
+        return pages;
+    }
+
+    synchronized void give(ByteBuffer[] pages) {
+        for (ByteBuffer page : pages) {
+            free.push(page);
+        }
+    }
+
+    synchronized long allocatedBytes() {
+        return (long) allocatedPages * PAGE_SIZE;
+    }
+
+    static int pages(long size) {
+        return Math.toIntExact((size + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+}
@@ -0,0 +1,114 @@
+package ru.yandex.myblog.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+import ru.yandex.myblog.model.dto.FeedCacheKey;
+import ru.yandex.myblog.model.dto.FeedPostDto;
+import ru.yandex.myblog.model.dto.FeedView;
+import ru.yandex.myblog.model.event.LikesFlushedEvent;
+import ru.yandex.myblog.model.event.PostChangedEvent;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Slf4j
+@Service
+public class FeedCache {
+
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int POST_OVERHEAD = 128;
+
+    private final Cache<FeedCacheKey, FeedView> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final long epoch = System.currentTimeMillis();
+    private volatile Instant lastModified = Instant.ofEpochMilli(epoch);
+
+    public FeedCache(@Value("${myblog.feed-cache.max-size:16MB}") DataSize maxSize, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher(FeedCache::weigh)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "feed");
+    }
+
+    public FeedView get(FeedCacheKey key, Supplier<FeedView> loader) {
+        FeedView cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadedAt = generation.get();
+        FeedView view = loader.get();
+        cache.put(key, view);
+        // a post changed while the page was being assembled, so it may already be stale
+        if (generation.get() != loadedAt) {
+            cache.invalidate(key);
+        }
+        return view;
+    }
+
+    /**
+     * Weak validator for any feed page: it changes whenever a post change is observed
+     * and after a restart, so it must be read before the page is loaded. A flush of likes
+     * counts as a change, so a revalidated page never keeps showing old like counts.
+     */
+    public String eTag() {
+        return "W/\"" + Long.toHexString(epoch) + "-" + generation.get() + "\"";
+    }
+
+    public Instant lastModified() {
+        return lastModified;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(PostChangedEvent event) {
+        generation.incrementAndGet();
+        lastModified = Instant.now();
+        cache.asMap().entrySet().removeIf(entry -> isAffected(entry, event));
+        log.debug("Feed cache invalidated for post {} ({})", event.postId(), event.type());
+    }
+
+    /**
+     * Drops the pages showing a post whose likes were written, once per flush rather than per click.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLikesFlushed(LikesFlushedEvent event) {
+        generation.incrementAndGet();
+        lastModified = Instant.now();
+        cache.asMap().values().removeIf(view -> view.posts().stream().anyMatch(post -> event.postIds().contains(post.getId())));
+        log.debug("Feed cache invalidated for likes of {} posts", event.postIds().size());
+    }
+
+    private static boolean isAffected(Map.Entry<FeedCacheKey, FeedView> entry, PostChangedEvent event) {
+        String tag = entry.getKey().tag();
+        if (event.type().isMembershipChanged() && (tag.isEmpty() || event.tags().contains(tag))) {
+            return true;
+        }
+        return entry.getValue().posts().stream().anyMatch(post -> post.getId() == event.postId());
+    }
+
+    private static int weigh(FeedCacheKey key, FeedView view) {
+        long weight = ENTRY_OVERHEAD + 2L * key.tag().length();
+        for (FeedPostDto post : view.posts()) {
+            weight += POST_OVERHEAD + 2L * (length(post.getTitle()) + length(post.getTextPreview()));
+            for (String tag : post.getTags()) {
+                weight += 2L * tag.length();
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
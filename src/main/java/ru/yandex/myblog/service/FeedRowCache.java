@@ -0,0 +1,77 @@
+package ru.yandex.myblog.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+import ru.yandex.myblog.model.dto.FeedPostDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the rendered {@code <tr>} of every feed post so a feed page only has to
+ * render its paging controls. Rows are keyed by the post version and its pending
+ * likes: any change to what the row shows yields a new key, so an outdated row is
+ * never served and simply ages out.
+ */
+@Service
+public class FeedRowCache {
+
+    private static final TemplateSpec ROW_TEMPLATE =
+            new TemplateSpec("fragments/feed-row", Set.of("row"), TemplateMode.HTML, null);
+
+    private final ITemplateEngine templateEngine;
+    private final Cache<RowKey, String> cache;
+
+    public FeedRowCache(ITemplateEngine templateEngine,
+                        @Value("${myblog.feed-row-cache.max-size:8MB}") DataSize maxSize,
+                        MeterRegistry meterRegistry) {
+        this.templateEngine = templateEngine;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((RowKey key, String row) -> 2 * row.length())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "feed-rows");
+    }
+
+    public List<String> render(List<FeedPostDto> posts, HttpServletRequest request, HttpServletResponse response) {
+        List<String> rows = new ArrayList<>(posts.size());
+        WebContext context = null;
+        for (FeedPostDto post : posts) {
+            // a search row shows the snippet of its query, which is hardly ever asked for again
+            boolean cacheable = post.getSnippet() == null;
+            RowKey key = new RowKey(post.getId(), post.getVersion(), post.getPendingLikes());
+            String row = cacheable ? cache.getIfPresent(key) : null;
+            if (row == null) {
+                if (context == null) {
+                    context = new WebContext(JakartaServletWebApplication
+                            .buildApplication(request.getServletContext())
+                            .buildExchange(request, response));
+                }
+                context.setVariable("post", post);
+                row = templateEngine.process(ROW_TEMPLATE, context);
+                if (cacheable) {
+                    cache.put(key, row);
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private record RowKey(long postId, long version, int pendingLikes) {
+    }
+}
@@ -4,14 +4,20 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.util.HtmlUtils;
+import ru.yandex.myblog.model.domain.ImageInfo;
 import ru.yandex.myblog.model.domain.Post;
+import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.FeedCursor;
+import ru.yandex.myblog.model.dto.FeedPage;
 import ru.yandex.myblog.model.dto.Paging;
-import ru.yandex.myblog.repository.JdbcCommentRepository;
 import ru.yandex.myblog.repository.JdbcImageRepo;
 import ru.yandex.myblog.repository.JdbcPostRepository;
-import ru.yandex.myblog.repository.JdbcTagRepository;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -20,31 +26,120 @@ import java.util.List;
 public class FeedService {
 
     private final JdbcPostRepository postRepo;
-    private final JdbcTagRepository tagRepo;
-    private final JdbcCommentRepository commentsRepo;
+    private final TagDictionary tagDictionary;
     private final JdbcImageRepo imageRepo;
+    private final LikeBuffer likeBuffer;
 
-    public List<Post> getPosts(String searchedTag, int pageSize, int pageNumber) {
+    public FeedPage getPostsPage(String searchedTag, int pageSize, int pageNumber) {
         int offset = (pageNumber - 1) * pageSize;
-        List<Post> lastPosts = searchedTag.isEmpty() ? postRepo.getPosts(offset, pageSize) : postRepo.getPostsByTag(searchedTag, offset, pageSize);
+        int limit = pageSize + 1;
+        List<Post> lastPosts;
+        if (searchedTag.isEmpty()) {
+            lastPosts = postRepo.getPosts(offset, limit);
+        } else {
+            Optional<Long> tagId = tagDictionary.findId(searchedTag);
+            lastPosts = tagId.isEmpty() ? new ArrayList<>() : postRepo.getPostsByTag(tagId.get(), offset, limit);
+        }
+
+        boolean hasNext = lastPosts.size() > pageSize;
+        List<Post> page = hasNext ? new ArrayList<>(lastPosts.subList(0, pageSize)) : lastPosts;
+        return new FeedPage(hydrate(page), new Paging(pageNumber, pageSize, hasNext, pageNumber > 1));
+    }
+
+    /**
+     * A page of posts matching the phrase by relevance, with the matched words of each
+     * snippet wrapped in {@code <mark>}. Relevance has no stable key to page by, so
+     * search always uses page numbers.
+     */
+    public FeedPage searchPosts(String phrase, String searchedTag, int pageSize, int pageNumber) {
+        Long tagId = null;
+        if (!searchedTag.isEmpty()) {
+            Optional<Long> foundTagId = tagDictionary.findId(searchedTag);
+            if (foundTagId.isEmpty()) {
+                return new FeedPage(new ArrayList<>(), new Paging(pageNumber, pageSize, false, pageNumber > 1));
+            }
+            tagId = foundTagId.get();
+        }
+
+        List<Post> found = postRepo.searchPosts(phrase, tagId, (pageNumber - 1) * pageSize, pageSize + 1);
+        boolean hasNext = found.size() > pageSize;
+        List<Post> page = hasNext ? new ArrayList<>(found.subList(0, pageSize)) : found;
+        for (Post post : page) {
+            post.setSnippet(highlight(post.getSnippet()));
+        }
+        return new FeedPage(hydrate(page), new Paging(pageNumber, pageSize, hasNext, pageNumber > 1));
+    }
+
+    public FeedPage getPostsPage(String searchedTag, int pageSize, FeedCursor cursor) {
+        Long tagId = null;
+        if (!searchedTag.isEmpty()) {
+            Optional<Long> foundTagId = tagDictionary.findId(searchedTag);
+            if (foundTagId.isEmpty()) {
+                return toCursorPage(new ArrayList<>(), pageSize, false, false);
+            }
+            tagId = foundTagId.get();
+        }
+
+        int limit = pageSize + 1;
+        if (cursor != null && cursor.direction() == FeedCursor.Direction.NEWER) {
+            List<Post> newerPosts = tagId == null
+                    ? postRepo.getPostsNewerThan(cursor.postId(), limit)
+                    : postRepo.getPostsByTagNewerThan(tagId, cursor.postId(), limit);
+            if (newerPosts.size() <= pageSize) {
+                return getPostsPage(searchedTag, pageSize, null);
+            }
+            List<Post> page = newerPosts.subList(1, newerPosts.size());
+            return toCursorPage(page, pageSize, true, true);
+        }
+
+        List<Post> olderPosts;
+        if (cursor == null) {
+            olderPosts = tagId == null ? postRepo.getPosts(0, limit) : postRepo.getPostsByTag(tagId, 0, limit);
+        } else {
+            olderPosts = tagId == null
+                    ? postRepo.getPostsOlderThan(cursor.postId(), limit)
+                    : postRepo.getPostsByTagOlderThan(tagId, cursor.postId(), limit);
+        }
+        boolean hasNext = olderPosts.size() > pageSize;
+        List<Post> page = hasNext ? olderPosts.subList(0, pageSize) : olderPosts;
+        return toCursorPage(page, pageSize, hasNext, cursor != null);
+    }
+
+    private FeedPage toCursorPage(List<Post> posts, int pageSize, boolean hasNext, boolean hasPrevious) {
+        if (posts.isEmpty()) {
+            return new FeedPage(posts, Paging.cursor(pageSize, null, null));
+        }
+        String nextCursor = hasNext ? FeedCursor.olderThan(posts.get(posts.size() - 1).getId()).encode() : null;
+        String previousCursor = hasPrevious ? FeedCursor.newerThan(posts.get(0).getId()).encode() : null;
+        return new FeedPage(hydrate(new ArrayList<>(posts)), Paging.cursor(pageSize, nextCursor, previousCursor));
+    }
+
+    private List<Post> hydrate(List<Post> posts) {
+        if (posts.isEmpty()) {
+            return posts;
+        }
+
+        List<Long> postIds = posts.stream().map(Post::getId).toList();
+        Map<Long, List<Tag>> tags = tagDictionary.getTagsForPosts(postIds);
+        Map<Long, ImageInfo> images = imageRepo.getInfoByPostIds(postIds);
 
-        for (Post post : lastPosts) {
-            post.setTags(tagRepo.getTagsForPost(post.getId()));
-            post.setComments(commentsRepo.getAllForPost(post.getId()));
-            post.setImage(imageRepo.getByPostId(post.getId()));
+        for (Post post : posts) {
+            post.setTags(tags.getOrDefault(post.getId(), new ArrayList<>()));
+            post.setImage(images.get(post.getId()));
+            int pendingLikes = likeBuffer.pending(post.getId());
+            post.setPendingLikes(pendingLikes);
+            post.setLikesCount(Math.max(0, post.getLikesCount() + pendingLikes));
         }
 
-        return lastPosts;
+        return posts;
     }
 
-    public Paging getPageInfo(int pageSize, int pageNumber, String tag){
-        Integer count = tag.isEmpty() ? postRepo.getTotalPostsCount() : postRepo.getTotalPostsCount(tag);
-        if (count == null){
-            count = 0;
+    static String highlight(String snippet) {
+        if (snippet == null) {
+            return null;
         }
-        int pageCount = count / pageSize + (count % pageSize == 0 ? 0 : 1);
-        boolean isLastPage = pageNumber == pageCount;
-        boolean isFirstPage = (pageNumber == 1);
-        return new Paging(pageNumber, pageSize,  !isLastPage && count != 0, !isFirstPage && count != 0);
+        return HtmlUtils.htmlEscape(snippet)
+                .replace(JdbcPostRepository.MATCH_START, "<mark>")
+                .replace(JdbcPostRepository.MATCH_END, "</mark>");
     }
 }
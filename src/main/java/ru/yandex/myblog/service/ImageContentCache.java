@@ -0,0 +1,232 @@
+package ru.yandex.myblog.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the content of frequently requested images off-heap, in pages of a {@link DirectPagePool}
+ * sized to the byte budget, so hot images add nothing to the old generation. An entry hands its pages
+ * back as soon as it is evicted and the last request writing from it is done, rather than when
+ * the collector finds a buffer. Entries are keyed by SHA-256, so a cached content can never go stale;
+ * released content is evicted only to make room for others sooner.
+ */
+@Service
+public class ImageContentCache {
+
+    private final Cache<String, Content> cache;
+    private final DirectPagePool pool;
+    private final long maxEntrySize;
+
+    public ImageContentCache(@Value("${myblog.image-cache.max-size:64MB}") DataSize maxSize,
+                             @Value("${myblog.image-cache.max-entry-size:2MB}") DataSize maxEntrySize,
+                             MeterRegistry meterRegistry) {
+        this.maxEntrySize = maxEntrySize.toBytes();
+        this.pool = new DirectPagePool(maxSize.toBytes());
+        this.cache = Caffeine.newBuilder()
+                // room for an entry being loaded while the cache is full
+                .maximumWeight(Math.max(0, maxSize.toBytes() - maxEntrySize.toBytes()))
+                .weigher((String sha256, Content content) -> content.pages.length * DirectPagePool.PAGE_SIZE)
+                .removalListener((String sha256, Content content, RemovalCause cause) -> {
+                    if (content != null) {
+                        content.release();
+                    }
+                })
+                // pages of an evicted entry go back to the pool on the thread that evicted it
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "images");
+        // the weighted size is brought up to date by cache maintenance, which otherwise runs only now and then
+        Gauge.builder("cache.resident", cache, c -> {
+                    c.cleanUp();
+                    return c.policy().eviction().orElseThrow().weightedSize().orElse(0);
+                })
+                .tag("cache", "images")
+                .baseUnit("bytes")
+                .description("Image content held in the cache")
+                .register(meterRegistry);
+        Gauge.builder("cache.allocated", pool, DirectPagePool::allocatedBytes)
+                .tag("cache", "images")
+                .baseUnit("bytes")
+                .description("Native memory taken by the image cache")
+                .register(meterRegistry);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", "images")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Writes {@code length} bytes of the image starting at {@code offset}, loading the whole content
+     * on a miss. Returns false, writing nothing, when the image is too large to be worth a share of
+     * the budget or the budget is held by requests still writing, so the caller streams it from the store.
+     */
+    public boolean write(ImageInfo image, long offset, long length, OutputStream out, Loader loader) throws IOException {
+        if (image.getSize() > maxEntrySize) {
+            return false;
+        }
+        Content content = acquire(image, loader);
+        if (content == null) {
+            return false;
+        }
+        try {
+            content.write(offset, length, out);
+        } finally {
+            content.release();
+        }
+        return true;
+    }
+
+    public void evict(String sha256) {
+        cache.invalidate(sha256);
+    }
+
+    /**
+     * Returns the content with a reference held for the caller, loaded outside the cache so that
+     * a full pool can be relieved by eviction before the load gives up.
+     */
+    private Content acquire(ImageInfo image, Loader loader) throws IOException {
+        Content cached = cache.getIfPresent(image.getSha256());
+        if (cached != null && cached.retain()) {
+            return cached;
+        }
+
+        Content loaded = load(image, loader);
+        if (loaded == null) {
+            return null;
+        }
+        loaded.retain();
+        Content previous = cache.asMap().putIfAbsent(image.getSha256(), loaded);
+        if (previous == null) {
+            return loaded;
+        }
+        // loaded concurrently by another request, the reference meant for the cache is not needed
+        loaded.release();
+        if (previous.retain()) {
+            loaded.release();
+            return previous;
+        }
+        return loaded;
+    }
+
+    private Content load(ImageInfo image, Loader loader) throws IOException {
+        ByteBuffer[] pages = pool.take(image.getSize());
+        if (pages == null) {
+            cache.cleanUp();
+            pages = pool.take(image.getSize());
+            if (pages == null) {
+                return null;
+            }
+        }
+
+        Content content = new Content(pages, image.getSize());
+        try {
+            content.fill(loader);
+        } catch (IOException | RuntimeException e) {
+            content.release();
+            throw e;
+        }
+        if (content.filled != image.getSize()) {
+            content.release();
+            throw new IOException("Image " + image.getSha256() + " ended at " + content.filled + " of " + image.getSize());
+        }
+        return content;
+    }
+
+    /**
+     * Content spread over pages, counting the cache and every request writing from it as references.
+     * The pages go back to the pool when the count drops to zero, and cannot be taken again before.
+     */
+    private final class Content {
+
+        private final ByteBuffer[] pages;
+        private final long size;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private long filled;
+
+        private Content(ByteBuffer[] pages, long size) {
+            this.pages = pages;
+            this.size = size;
+        }
+
+        boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                pool.give(pages);
+            }
+        }
+
+        void fill(Loader loader) throws IOException {
+            loader.copyTo(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (filled + len > size) {
+                        throw new IOException("Image is longer than its size " + size);
+                    }
+                    while (len > 0) {
+                        ByteBuffer page = pages[(int) (filled / DirectPagePool.PAGE_SIZE)];
+                        int chunk = Math.min(len, page.remaining());
+                        page.put(b, off, chunk);
+                        off += chunk;
+                        len -= chunk;
+                        filled += chunk;
+                    }
+                }
+            });
+        }
+
+        /**
+         * Writes a slice of the content through a channel, page by page, without copying it onto the heap first.
+         */
+        void write(long offset, long length, OutputStream out) throws IOException {
+            WritableByteChannel channel = Channels.newChannel(out);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                int index = (int) (position / DirectPagePool.PAGE_SIZE);
+                int from = (int) (position % DirectPagePool.PAGE_SIZE);
+                int to = (int) Math.min(DirectPagePool.PAGE_SIZE, end - (long) index * DirectPagePool.PAGE_SIZE);
+                ByteBuffer slice = pages[index].slice(from, to - from);
+                while (slice.hasRemaining()) {
+                    channel.write(slice);
+                }
+                position += to - from;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+
+        void copyTo(OutputStream out) throws IOException;
+    }
+}
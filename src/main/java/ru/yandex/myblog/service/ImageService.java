@@ -2,27 +2,258 @@ package ru.yandex.myblog.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
+import ru.yandex.myblog.model.event.ImageStoredEvent;
 import ru.yandex.myblog.model.exception.ImageNotFoundException;
+import ru.yandex.myblog.repository.ImageStore;
 import ru.yandex.myblog.repository.JdbcImageRepo;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 @Slf4j
 public class ImageService {
 
     private final JdbcImageRepo imageRepo;
+    private final ImageStore imageStore;
+    private final ImageContentCache imageCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+
+    public boolean save(long postId, MultipartFile file) {
+        String sha256 = sha256Hex(postId, file);
+        return sha256 != null && save(postId, file, sha256);
+    }
+
+    /**
+     * Replaces the image of the post, unless no file was chosen or the upload has exactly
+     * the content already shown.
+     */
+    public boolean replace(long postId, MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return false;
+        }
+        String sha256 = sha256Hex(postId, file);
+        if (sha256 == null) {
+            return false;
+        }
+
+        Optional<ImageInfo> current = imageRepo.getInfoByPostId(postId);
+        if (current.isPresent() && sha256.equals(current.get().getSha256())) {
+            log.debug("Post {} got the same image again, keeping it", postId);
+            return false;
+        }
+
+        delete(postId);
+        return save(postId, file, sha256);
+    }
+
+    /**
+     * Streams the upload into the store, the multipart resolver has already spooled large parts to disk.
+     */
+    private boolean save(long postId, MultipartFile file, String sha256) {
+        long size = file.getSize();
+        int refCount = size == 0 ? 0 : imageRepo.acquireContent(sha256, size);
+        long imageId = imageRepo.save(postId, file.getOriginalFilename(), file.getContentType(), sha256, size);
+        if (refCount != 1) {
+            // nothing to store, or the same bytes are already stored for another post
+            return true;
+        }
+
+        ImageInfo image = new ImageInfo(imageId, postId, file.getOriginalFilename(), size, file.getContentType(), sha256);
+        imageRepo.lockContent(sha256);
+        try (InputStream content = file.getInputStream()) {
+            imageStore.store(image, content);
+        } catch (IOException e) {
+            // the rows are already inserted, let the surrounding transaction roll them back
+            throw new IllegalStateException("Could not store image for post " + postId, e);
+        }
+        eventPublisher.publishEvent(new ImageStoredEvent(image));
+        return true;
+    }
+
+    /**
+     * Stores a downscaled copy of the image content, shared by every image with that content.
+     */
+    @Transactional
+    public ImageVariant saveVariant(ImageInfo image, int width, String contentType, byte[] data) throws IOException {
+        String sha256 = sha256Hex(data);
+        int refCount = imageRepo.acquireContent(sha256, data.length);
+        long variantId = imageRepo.saveVariant(image, width, contentType, sha256, data.length);
+        ImageVariant variant = new ImageVariant(variantId, image, width, data.length, contentType, sha256);
+        if (refCount == 1) {
+            imageRepo.lockContent(sha256);
+            imageStore.store(variant, new ByteArrayInputStream(data));
+        }
+        return variant;
+    }
+
+    public List<ImageVariant> getVariants(ImageInfo image) {
+        return imageRepo.getVariants(image);
+    }
+
+    /**
+     * The narrowest variant at least {@code width} pixels wide, or the original when there is none.
+     */
+    public ImageInfo getVariant(ImageInfo image, int width) {
+        for (ImageVariant variant : imageRepo.getVariants(image)) {
+            if (variant.getWidth() >= width) {
+                return variant;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Records that the image has every variant it will ever get, so the original can be
+     * cached for good where it stands in for a width.
+     */
+    public void markVariantsDone(ImageInfo image) {
+        imageRepo.markVariantsDone(image.getSha256());
+    }
+
+    public boolean isVariantsDone(ImageInfo image) {
+        return imageRepo.areVariantsDone(image.getSha256());
+    }
+
+    public List<ImageInfo> findImagesWithPendingVariants(long afterId, int limit) {
+        return imageRepo.findImagesWithPendingVariants(afterId, limit);
+    }
+
+    public boolean delete(long postId) {
+        Optional<ImageInfo> image = imageRepo.getInfoByPostId(postId).filter(ImageInfo::isExists);
+        boolean deleted = imageRepo.delete(postId);
+        image.ifPresent(this::release);
+        return deleted;
+    }
+
+    /**
+     * Drops the reference of a deleted image. The last reference takes the variants along,
+     * and the bytes of everything no longer referenced are freed once the delete is committed.
+     */
+    private void release(ImageInfo image) {
+        if (imageRepo.releaseContent(image.getSha256()) > 0) {
+            return;
+        }
+
+        List<ImageInfo> released = new ArrayList<>();
+        released.add(image);
+        List<ImageVariant> variants = imageRepo.getVariants(image);
+        // variant rows go away with the content row they were made from
+        imageRepo.deleteContent(image.getSha256());
+        for (ImageVariant variant : variants) {
+            if (imageRepo.releaseContent(variant.getSha256()) == 0) {
+                imageRepo.deleteContent(variant.getSha256());
+                released.add(variant);
+            }
+        }
+
+        afterCommit(() -> {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            for (ImageInfo content : released) {
+                imageCache.evict(content.getSha256());
+                // an upload of the same bytes holds the lock until it commits, so its reference is seen here
+                transaction.executeWithoutResult(status -> {
+                    imageRepo.lockContent(content.getSha256());
+                    if (!imageRepo.isReferenced(content.getSha256())) {
+                        imageStore.remove(content);
+                    }
+                });
+            }
+        });
+    }
+
+    public ImageInfo getInfoForPost(long postId) {
+        return imageRepo.getInfoByPostId(postId)
+                .filter(ImageInfo::isExists)
+                .orElseThrow(() -> {
+                    log.error("Image for post {} was not found ", postId);
+                    return new ImageNotFoundException("Image for post " + postId + " was not found");
+                });
+    }
+
+    public InputStream open(ImageInfo image) throws IOException {
+        return imageStore.open(image);
+    }
+
+    public Optional<Path> getFile(ImageInfo image) {
+        return imageStore.file(image);
+    }
+
+    /**
+     * Copies {@code length} bytes of the image starting at {@code offset}. Hot images are served from
+     * {@link ImageContentCache}, the rest are streamed from the store without holding them in memory.
+     */
+    public void writeTo(ImageInfo image, long offset, long length, OutputStream out) throws IOException {
+        if (!imageCache.write(image, offset, length, out, content -> imageStore.copyTo(image, 0, image.getSize(), content))) {
+            imageStore.copyTo(image, offset, length, out);
+        }
+    }
+
+    /**
+     * Hashes the upload in a pass over its stream, so it is never copied onto the heap as a whole.
+     * Returns null when the upload cannot be read.
+     */
+    private static String sha256Hex(long postId, MultipartFile file) {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.error("Could not read uploaded image for post {}", postId, e);
+            return null;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static String sha256Hex(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-    public ImageBlob getForPost(long postId) {
-        var img = imageRepo.getByPostId(postId);
-        if (img == null){
-            log.error("Image for post {} was not found ", postId);
-            throw new ImageNotFoundException("Image for post "+postId+" was not found");
+    /**
+     * Content must outlive a rolled back delete, so it is released only once the delete is committed.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-        return img;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 }
@@ -0,0 +1,75 @@
+package ru.yandex.myblog.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.repository.FileSystemImageStore;
+import ru.yandex.myblog.repository.ImageStore;
+import ru.yandex.myblog.repository.JdbcImageRepo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Moves image content still kept in {@code image_contents.data} to the filesystem store at startup.
+ * Each content is written and verified against its hash before its bytea is cleared, so the
+ * migration can be interrupted and restarted at any point. Until then the filesystem store reads
+ * the content from the database, so images keep being served while the migration runs.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "myblog.image-store.migrate-from-database", havingValue = "true")
+public class ImageStoreMigrator implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final JdbcImageRepo imageRepo;
+    private final FileSystemImageStore fileSystemImageStore;
+
+    public ImageStoreMigrator(JdbcImageRepo imageRepo, ImageStore imageStore) {
+        if (!(imageStore instanceof FileSystemImageStore fileSystemImageStore)) {
+            throw new IllegalStateException(
+                    "myblog.image-store.migrate-from-database=true requires myblog.image-store.type=filesystem");
+        }
+        this.imageRepo = imageRepo;
+        this.fileSystemImageStore = fileSystemImageStore;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        log.info("Moving images from the database to the filesystem store");
+        int moved = 0;
+        String lastSha256 = "";
+        List<String> hashes;
+        while (!(hashes = imageRepo.findContentsWithInlineData(lastSha256, BATCH_SIZE)).isEmpty()) {
+            for (String sha256 : hashes) {
+                migrate(sha256);
+                moved++;
+            }
+            lastSha256 = hashes.getLast();
+            log.info("Moved {} images so far", moved);
+        }
+        log.info("Image migration finished, {} images moved", moved);
+    }
+
+    private void migrate(String sha256) throws IOException {
+        byte[] data = imageRepo.readInlineData(sha256);
+        if (data == null) {
+            // released or moved by another instance since it was found
+            log.debug("Image {} has no data left to move", sha256);
+            return;
+        }
+        if (data.length > 0) {
+            ImageInfo image = new ImageInfo();
+            image.setSize(data.length);
+            image.setSha256(sha256);
+            // the store verifies the bytes against the hash before keeping them
+            fileSystemImageStore.store(image, new ByteArrayInputStream(data));
+        }
+        imageRepo.clearInlineData(sha256);
+    }
+}
@@ -0,0 +1,192 @@
+package ru.yandex.myblog.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
+import ru.yandex.myblog.model.event.ImageStoredEvent;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Produces downscaled copies of uploaded images with ImageIO, after the upload is committed
+ * and off the request thread. Only JPEG and PNG originals are resized; anything else,
+ * animated GIFs included, is always served as uploaded.
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final int BACKFILL_BATCH_SIZE = 100;
+
+    private final ImageService imageService;
+    private final int[] widths;
+
+    public ImageVariantService(ImageService imageService,
+                               @Value("${myblog.image-variants.widths:640,1280}") int[] widths) {
+        this.imageService = imageService;
+        this.widths = Arrays.stream(widths).sorted().distinct().toArray();
+    }
+
+    @Async("imageVariantExecutor")
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onImageStored(ImageStoredEvent event) {
+        process(event.image());
+    }
+
+    /**
+     * Generates the variants of images uploaded before variants existed, or before a restart
+     * dropped their queued generation.
+     */
+    @Async("imageVariantExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int processed = 0;
+        long lastId = 0;
+        List<ImageInfo> images;
+        while (!(images = imageService.findImagesWithPendingVariants(lastId, BACKFILL_BATCH_SIZE)).isEmpty()) {
+            for (ImageInfo image : images) {
+                // images sharing a content are done by the first of them
+                if (!imageService.isVariantsDone(image)) {
+                    process(image);
+                    processed++;
+                }
+            }
+            lastId = images.getLast().getId();
+        }
+        if (processed > 0) {
+            log.info("Created missing variants of {} images", processed);
+        }
+    }
+
+    private void process(ImageInfo image) {
+        try {
+            generate(image);
+        } catch (IOException | RuntimeException e) {
+            // the original is still served, so a failed resize costs bandwidth but nothing else
+            log.warn("Could not create variants of image {} of post {}", image.getId(), image.getPostId(), e);
+        }
+        // not retried after a failure either: the original is what this image will be served as
+        imageService.markVariantsDone(image);
+    }
+
+    void generate(ImageInfo image) throws IOException {
+        Set<Integer> existing = imageService.getVariants(image).stream()
+                .map(ImageVariant::getWidth)
+                .collect(Collectors.toSet());
+
+        try (InputStream content = imageService.open(image);
+             ImageInputStream in = ImageIO.createImageInputStream(content)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                log.debug("Image {} is not in a format ImageIO can read", image.getId());
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                String format = outputFormat(reader.getFormatName());
+                int originalWidth = reader.getWidth(0);
+                int[] targets = Arrays.stream(widths)
+                        .filter(width -> width < originalWidth && !existing.contains(width))
+                        .toArray();
+                if (format == null || targets.length == 0) {
+                    return;
+                }
+
+                BufferedImage scaled = read(reader, originalWidth, targets[targets.length - 1]);
+                for (int i = targets.length - 1; i >= 0; i--) {
+                    scaled = scale(scaled, targets[i]);
+                    imageService.saveVariant(image, targets[i], "image/" + format, encode(scaled, format));
+                }
+                log.info("Created {} variants of image {} of post {}", targets.length, image.getId(), image.getPostId());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the image skipping pixels while it stays at least twice as wide as needed,
+     * so a phone photo is never fully expanded in memory just to be shrunk.
+     */
+    private static BufferedImage read(ImageReader reader, int originalWidth, int widest) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        int subsampling = Math.max(1, originalWidth / (2 * widest));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return reader.read(0, param);
+    }
+
+    /**
+     * Halves the image until one more bilinear step reaches the width: a single large
+     * bilinear step skips most source pixels and looks noisy.
+     */
+    private static BufferedImage scale(BufferedImage source, int width) {
+        BufferedImage current = source;
+        while (current.getWidth() > width) {
+            int nextWidth = Math.max(width, current.getWidth() / 2);
+            int nextHeight = Math.max(1, Math.round((float) current.getHeight() * nextWidth / current.getWidth()));
+            int type = current.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static String outputFormat(String readerFormat) {
+        return switch (readerFormat.toLowerCase()) {
+            case "jpeg", "jpg" -> "jpeg";
+            case "png" -> "png";
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,98 @@
+package ru.yandex.myblog.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.myblog.model.event.LikesFlushedEvent;
+import ru.yandex.myblog.model.event.PostChangedEvent;
+import ru.yandex.myblog.repository.JdbcPostRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates likes in memory and writes them to the posts table in periodic batches, so a
+ * popular post does not queue every click on its row lock. Counters are {@link LongAdder}s,
+ * which spread concurrent clicks over cells instead of contending on one value.
+ * Counts read from the database have to be corrected with {@link #pending(long)}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LikeBuffer {
+
+    private final JdbcPostRepository postRepo;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+    // counters are dropped only with their post: dropping a live one could lose a click racing with the removal
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    public void add(long postId, int delta) {
+        pending.computeIfAbsent(postId, id -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Likes of the post not yet written to the database.
+     */
+    public int pending(long postId) {
+        LongAdder counter = pending.get(postId);
+        return counter == null ? 0 : counter.intValue();
+    }
+
+    /**
+     * Writes the pending likes of all posts in one transaction. A delta is subtracted from its
+     * counter only once the write is committed, so until then readers keep seeing the clicks,
+     * and a failed write leaves them in place for the next attempt. Flushes run one at a time:
+     * the shutdown flush may start while a scheduled one is writing, and both would write the same sums.
+     */
+    @Scheduled(fixedDelayString = "${myblog.likes.flush-interval:PT1S}")
+    public synchronized void flush() {
+        Map<Long, Long> deltas = new HashMap<>();
+        pending.forEach((postId, counter) -> {
+            long delta = counter.sum();
+            if (delta != 0) {
+                deltas.put(postId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            // a batch applied in part would be applied again in full by the retry
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> postRepo.addLikes(deltas));
+        } catch (RuntimeException e) {
+            log.warn("Could not write likes of {} posts, will retry", deltas.size(), e);
+            return;
+        }
+        deltas.forEach((postId, delta) -> {
+            LongAdder counter = pending.get(postId);
+            if (counter != null) {
+                counter.add(-delta);
+            }
+        });
+        eventPublisher.publishEvent(new LikesFlushedEvent(Set.copyOf(deltas.keySet())));
+        log.debug("Wrote likes of {} posts", deltas.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(PostChangedEvent event) {
+        if (event.type() == PostChangedEvent.Type.DELETED) {
+            pending.remove(event.postId());
+        }
+    }
+}
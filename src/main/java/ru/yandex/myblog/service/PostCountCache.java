@@ -0,0 +1,43 @@
+package ru.yandex.myblog.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.myblog.repository.JdbcPostRepository;
+
+/**
+ * Approximate number of posts shown on the main feed. Tag feeds show no total, so
+ * opening a tag never costs a count.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PostCountCache {
+
+    private final JdbcPostRepository postRepo;
+    private volatile Integer count;
+
+    public int getCount() {
+        Integer cached = count;
+        if (cached == null) {
+            cached = load();
+            count = cached;
+        }
+        return cached;
+    }
+
+    @Scheduled(fixedDelayString = "${myblog.post-count.refresh-interval:PT1M}",
+            initialDelayString = "${myblog.post-count.refresh-interval:PT1M}")
+    public void refresh() {
+        if (count != null) {
+            count = load();
+            log.debug("Refreshed post count: {}", count);
+        }
+    }
+
+    private int load() {
+        Integer loaded = postRepo.getTotalPostsCount();
+        return loaded == null ? 0 : loaded;
+    }
+}
@@ -2,21 +2,30 @@ package ru.yandex.myblog.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import ru.yandex.myblog.model.domain.Comment;
 import ru.yandex.myblog.model.domain.Post;
 import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.PostVersion;
+import ru.yandex.myblog.model.event.PostChangedEvent;
 import ru.yandex.myblog.model.exception.PostNotFoundException;
 import ru.yandex.myblog.repository.JdbcCommentRepository;
 import ru.yandex.myblog.repository.JdbcImageRepo;
 import ru.yandex.myblog.repository.JdbcPostRepository;
 import ru.yandex.myblog.repository.JdbcTagRepository;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -24,93 +33,169 @@ import java.util.Optional;
 @Transactional(readOnly = true)
 public class PostService {
 
+    private static final int PREVIEW_LENGTH = 300;
+
     private final JdbcPostRepository postRepo;
     private final JdbcTagRepository tagRepo;
+    private final TagDictionary tagDictionary;
     private final JdbcCommentRepository commentsRepo;
     private final JdbcImageRepo imageRepo;
+    private final ImageService imageService;
+    private final LikeBuffer likeBuffer;
+    private final ApplicationEventPublisher eventPublisher;
 
 
+    /**
+     * Stores the post with its tags in one statement; only an attached image takes more.
+     */
     @Transactional
     public Post createPost(String title, String  text, MultipartFile file, String tagsStr){
-        Post post = new Post();
-        post.setTitle(title);
-        post.setText(text);
-        post.setLikesCount(0);
-
-        long postId = postRepo.save(post);
-        post.setId(postId);
-
-        imageRepo.save(postId, file);
-
-        List<Tag> tags = Arrays.stream(tagsStr.split(" ")).map(e -> new Tag(e)).toList();
-        tagRepo.saveBatch(tags);
+        title = stripMatchMarks(title);
+        text = stripMatchMarks(text);
+        Set<String> names = parseTags(tagsStr);
+        Post post = postRepo.saveWithTags(title, text, buildPreview(text), names);
+        tagDictionary.remember(post.getTags());
+
+        if (file != null && !file.isEmpty()) {
+            imageService.save(post.getId(), file);
+        }
 
-        List<Tag> tagsByNames = tagRepo.getTagsByNames(tags.stream().map(e -> e.getName()).toList());
-        tagRepo.bindTagsToPost(postId, tagsByNames);
-        post.setTags(tagsByNames);
+        eventPublisher.publishEvent(new PostChangedEvent(post.getId(), PostChangedEvent.Type.CREATED, names));
         return post;
     }
 
+    /**
+     * Compares the form with the stored post and writes only the difference: the changed
+     * columns, the added and removed tag bindings, and the image if a new one was uploaded.
+     * Saving the form unchanged writes nothing.
+     */
     @Transactional
     public Post update(long id, String title, String  text, MultipartFile file, String tagsStr){
-        Post post = this.getPost(id);
-        post.setTitle(title);
-        post.setText(text);
-
-        long postId = postRepo.save(post);
-        post.setId(postId);
-
-        imageRepo.delete(postId);
-        imageRepo.save(postId, file);
+        title = stripMatchMarks(title);
+        text = stripMatchMarks(text);
+        Post post = postRepo.findById(id)
+                .orElseThrow(() -> new PostNotFoundException("Post with id " + id + " not found"));
+        List<Tag> currentTags = tagDictionary.getTagsForPost(id);
+        Set<String> currentNames = tagNames(currentTags);
+        Set<String> names = parseTags(tagsStr);
+
+        String changedTitle = Objects.equals(title, post.getTitle()) ? null : title;
+        String changedText = Objects.equals(text, post.getText()) ? null : text;
+        String preview = buildPreview(text);
+        String changedPreview = changedText == null || preview.equals(buildPreview(post.getText())) ? null : preview;
+
+        List<Tag> removedTags = currentTags.stream().filter(tag -> !names.contains(tag.getName())).toList();
+        tagRepo.unbindTagsFromPost(id, removedTags.stream().map(Tag::getId).toList());
+
+        List<String> addedNames = names.stream().filter(name -> !currentNames.contains(name)).toList();
+        List<Tag> addedTags = new ArrayList<>();
+        if (!addedNames.isEmpty()) {
+            addedTags.addAll(tagDictionary.getOrCreate(addedNames));
+            tagRepo.bindTagsToPost(id, addedTags);
+        }
 
-        tagRepo.deleteTagToPostConnections(id);
+        boolean imageChanged = imageService.replace(id, file);
 
-        List<Tag> tags = Arrays.stream(tagsStr.split(" ")).map(e -> new Tag(e)).toList();
-        tagRepo.saveBatch(tags);
+        if (changedTitle != null || changedText != null) {
+            postRepo.update(id, changedTitle, changedText, changedPreview);
+        } else if (!removedTags.isEmpty() || !addedTags.isEmpty() || imageChanged) {
+            postRepo.touch(id);
+        } else {
+            log.debug("Post {} was saved without changes", id);
+            post.setTags(currentTags);
+            return post;
+        }
 
-        List<Tag> tagsByNames = tagRepo.getTagsByNames(tags.stream().map(e -> e.getName()).toList());
-        tagRepo.bindTagsToPost(postId, tagsByNames);
-        post.setTags(tagsByNames);
+        post.setTitle(title);
+        post.setText(text);
+        post.setPreview(preview);
+        List<Tag> tags = new ArrayList<>(currentTags);
+        tags.removeAll(removedTags);
+        tags.addAll(addedTags);
+        post.setTags(tags);
+
+        Set<String> affectedTags = new HashSet<>(currentNames);
+        affectedTags.addAll(names);
+        eventPublisher.publishEvent(new PostChangedEvent(id, PostChangedEvent.Type.UPDATED, affectedTags));
         return post;
     }
 
+    public PostVersion getPostVersion(long id) {
+        return postRepo.findVersionById(id)
+                .map(version -> version.withPendingLikes(likeBuffer.pending(id)))
+                .orElseThrow(() -> new PostNotFoundException("Post with id " + id + " not found"));
+    }
+
     public Post getPost(long id) {
         Optional<Post> postOp = postRepo.findById(id);
         if (postOp.isEmpty()){
             throw  new PostNotFoundException("Post with id "+id+" not found");
         }
         Post post = postOp.get();
+        post.setLikesCount(Math.max(0, post.getLikesCount() + likeBuffer.pending(id)));
 
-        post.setTags(tagRepo.getTagsForPost(id));
+        post.setTags(tagDictionary.getTagsForPost(id));
         post.setComments(commentsRepo.getAllForPost(id));
-        post.setImage(imageRepo.getByPostId(id));
+        post.setImage(imageRepo.getInfoByPostId(id).orElse(null));
         return post;
     }
 
-    @Transactional
-    public Post likePost(long id, boolean liked) {
-        if (liked){
-            postRepo.likePost(id);
-        } else {
-            postRepo.unlikePost(id);
-        }
-        return getPost(id);
+    /**
+     * Counts the click and returns the likes count the post now shows. Reads only the stored
+     * count, so a click costs one indexed lookup however many comments the post has.
+     */
+    public int likePost(long id, boolean liked) {
+        int likesCount = postRepo.findLikesCount(id)
+                .orElseThrow(() -> new PostNotFoundException("Post with id " + id + " not found"));
+        likeBuffer.add(id, liked ? 1 : -1);
+        return Math.max(0, likesCount + likeBuffer.pending(id));
     }
 
     @Transactional
     public void deletePost(long id) {
+        Set<String> tags = tagNames(tagDictionary.getTagsForPost(id));
+
         int res = commentsRepo.deleteAllForPost(id);
         log.info("Post {} had {} comments, which were removed", id, res);
 
         int tagsConnections = tagRepo.deleteTagToPostConnections(id);
         log.info("Post {} had {} tags, which were removed", id, tagsConnections);
 
-        imageRepo.delete(id);
+        imageService.delete(id);
 
         int count = postRepo.deleteById(id);
         if (count == 0){
             log.info("post with id {} not found and cannot be deleted", id);
+        } else {
+            eventPublisher.publishEvent(new PostChangedEvent(id, PostChangedEvent.Type.DELETED, tags));
+        }
+    }
+
+    private Set<String> tagNames(List<Tag> tags) {
+        return tags.stream().map(Tag::getName).collect(Collectors.toSet());
+    }
+
+    private Set<String> parseTags(String tagsStr) {
+        return Arrays.stream(tagsStr.split(" "))
+                .filter(name -> !name.isBlank())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Search snippets use these characters to mark matches, a posted text must not contain them.
+     */
+    private static String stripMatchMarks(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.replace(JdbcPostRepository.MATCH_START, "").replace(JdbcPostRepository.MATCH_END, "");
+    }
+
+    private String buildPreview(String text) {
+        if (text == null) {
+            return "";
         }
+        return text.substring(0, Math.min(text.length(), PREVIEW_LENGTH));
     }
 
 }
@@ -0,0 +1,142 @@
+package ru.yandex.myblog.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.repository.JdbcTagRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The whole tag vocabulary in memory, by id and by name. Tags are never renamed or deleted,
+ * so an entry never goes stale: the dictionary is filled at startup, learns tags as they are
+ * written and asks the database only about the ones it has not seen yet. Post hydration
+ * then reads just tag ids from posts_tags.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TagDictionary {
+
+    private final JdbcTagRepository tagRepo;
+    private final Map<Long, String> namesById = new ConcurrentHashMap<>();
+    private final Map<String, Long> idsByName = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        tagRepo.findAll().forEach(this::put);
+        log.info("Loaded {} tags", namesById.size());
+    }
+
+    public List<Tag> getTagsForPost(long postId) {
+        return resolve(tagRepo.getTagIdsForPost(postId));
+    }
+
+    public Map<Long, List<Tag>> getTagsForPosts(Collection<Long> postIds) {
+        Map<Long, List<Long>> tagIdsByPost = tagRepo.getTagIdsForPosts(postIds);
+        load(tagIdsByPost.values().stream().flatMap(List::stream).toList());
+
+        Map<Long, List<Tag>> tagsByPost = new HashMap<>();
+        tagIdsByPost.forEach((postId, tagIds) -> tagsByPost.put(postId, toTags(tagIds)));
+        return tagsByPost;
+    }
+
+    public Optional<Long> findId(String name) {
+        Long id = idsByName.get(name);
+        if (id != null) {
+            return Optional.of(id);
+        }
+        Optional<Long> found = tagRepo.findIdByName(name);
+        found.ifPresent(tagId -> put(new Tag(tagId, name)));
+        return found;
+    }
+
+    /**
+     * Returns the tags with the given names, inserting the ones not known yet.
+     */
+    public List<Tag> getOrCreate(Collection<String> names) {
+        List<Tag> tags = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String name : names) {
+            Long id = idsByName.get(name);
+            if (id != null) {
+                tags.add(new Tag(id, name));
+            } else {
+                unknown.add(name);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            tagRepo.saveBatch(unknown.stream().map(Tag::new).toList());
+            List<Tag> created = tagRepo.getTagsByNames(unknown);
+            remember(created);
+            tags.addAll(created);
+        }
+        return tags;
+    }
+
+    /**
+     * Learns tags written in the current transaction once it commits: a rolled back insert
+     * must not leave an id behind that posts could then be bound to.
+     */
+    public void remember(Collection<Tag> tags) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            tags.forEach(this::put);
+            return;
+        }
+        List<Tag> written = List.copyOf(tags);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                written.forEach(TagDictionary.this::put);
+            }
+        });
+    }
+
+    private List<Tag> resolve(List<Long> tagIds) {
+        load(tagIds);
+        return toTags(tagIds);
+    }
+
+    private void load(Collection<Long> tagIds) {
+        Set<Long> missing = new HashSet<>();
+        for (Long tagId : tagIds) {
+            if (!namesById.containsKey(tagId)) {
+                missing.add(tagId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            tagRepo.getTagsByIds(missing).forEach(this::put);
+        }
+    }
+
+    private List<Tag> toTags(List<Long> tagIds) {
+        List<Tag> tags = new ArrayList<>(tagIds.size());
+        for (Long tagId : tagIds) {
+            String name = namesById.get(tagId);
+            if (name != null) {
+                tags.add(new Tag(tagId, name));
+            }
+        }
+        return tags;
+    }
+
+    private void put(Tag tag) {
+        // every post row refers to the same few names, keep one copy of each
+        String name = tag.getName().intern();
+        namesById.put(tag.getId(), name);
+        idsByName.put(name, tag.getId());
+    }
+}
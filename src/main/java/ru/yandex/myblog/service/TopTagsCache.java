@@ -0,0 +1,54 @@
+package ru.yandex.myblog.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.myblog.model.dto.TagCount;
+import ru.yandex.myblog.model.event.PostChangedEvent;
+import ru.yandex.myblog.repository.JdbcTagRepository;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The most used tags by the post counts maintained on the tags table. The list is dropped when
+ * posts are created, edited or deleted and loaded again on the next request, so a burst of
+ * edits costs one query.
+ */
+@Slf4j
+@Service
+public class TopTagsCache {
+
+    private final JdbcTagRepository tagRepo;
+    private final int maxSize;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile List<TagCount> top;
+
+    public TopTagsCache(JdbcTagRepository tagRepo, @Value("${myblog.top-tags.max-size:50}") int maxSize) {
+        this.tagRepo = tagRepo;
+        this.maxSize = maxSize;
+    }
+
+    public List<TagCount> getTop(int limit) {
+        List<TagCount> tags = top;
+        if (tags == null) {
+            long loadedAt = generation.get();
+            tags = List.copyOf(tagRepo.getTopTags(maxSize));
+            // a post changed while the list was loading, the next request loads it again
+            if (generation.get() == loadedAt) {
+                top = tags;
+            }
+        }
+        return tags.subList(0, Math.max(0, Math.min(limit, tags.size())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostChanged(PostChangedEvent event) {
+        if (event.type().isMembershipChanged()) {
+            generation.incrementAndGet();
+            top = null;
+            log.debug("Top tags dropped for post {} ({})", event.postId(), event.type());
+        }
+    }
+}
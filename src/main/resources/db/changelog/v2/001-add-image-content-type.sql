@@ -0,0 +1 @@
+alter table images add column if not exists content_type varchar(100);
@@ -0,0 +1,4 @@
+alter table posts add column if not exists comment_count int not null default 0;
+
+update posts p
+set comment_count = (select count(*) from comments c where c.post_id = p.id);
@@ -0,0 +1,5 @@
+alter table posts add column if not exists preview text;
+
+update posts
+set preview = left(text, 300)
+where preview is null;
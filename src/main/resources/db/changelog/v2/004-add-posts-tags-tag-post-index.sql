@@ -0,0 +1,9 @@
+delete from posts_tags a
+    using posts_tags b
+where a.ctid < b.ctid
+  and a.post_id = b.post_id
+  and a.tag_id = b.tag_id;
+
+create unique index if not exists posts_tags_tag_id_post_id_idx on posts_tags (tag_id, post_id desc);
+
+drop index if exists posts_tags_tag_id_idx;
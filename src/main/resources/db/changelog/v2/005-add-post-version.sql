@@ -0,0 +1,2 @@
+alter table posts add column if not exists version bigint not null default 0;
+alter table posts add column if not exists updated_at timestamp with time zone not null default now();
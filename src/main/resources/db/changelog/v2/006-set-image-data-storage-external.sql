@@ -0,0 +1,2 @@
+-- images are already compressed formats; keeping bytea uncompressed lets substring() read a slice without detoasting the whole value
+alter table images alter column data set storage external;
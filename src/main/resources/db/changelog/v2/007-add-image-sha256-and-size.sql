@@ -0,0 +1,10 @@
+alter table images add column if not exists sha256 varchar(64);
+alter table images add column if not exists size bigint not null default 0;
+alter table images alter column data drop not null;
+
+update images
+set sha256 = encode(sha256(data), 'hex'),
+    size   = octet_length(data)
+where sha256 is null and data is not null;
+
+create index if not exists images_sha256_idx on images (sha256);
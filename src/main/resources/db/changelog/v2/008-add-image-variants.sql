@@ -0,0 +1,17 @@
+create table if not exists image_variants
+(
+    id           bigint primary key generated always as identity,
+    image_id     bigint       not null,
+    width        int          not null,
+    content_type varchar(255) not null,
+    sha256       varchar(64)  not null,
+    size         bigint       not null,
+    data         bytea,
+
+    constraint image_id_fk foreign key (image_id) references images (id) on delete cascade,
+    constraint image_variants_image_width_uq unique (image_id, width)
+);
+
+alter table image_variants alter column data set storage external;
+
+create index if not exists image_variants_sha256_idx on image_variants (sha256);
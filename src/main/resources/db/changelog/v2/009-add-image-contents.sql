@@ -0,0 +1,44 @@
+-- image bytes are stored once per distinct content; ref_count counts the images and variants showing it
+create table if not exists image_contents
+(
+    sha256    varchar(64) primary key,
+    size      bigint not null,
+    ref_count int    not null,
+    data      bytea
+);
+
+alter table image_contents alter column data set storage external;
+
+insert into image_contents (sha256, size, ref_count, data)
+select distinct on (sha256) sha256, size, count(*) over (partition by sha256), data
+from images
+where sha256 is not null and size > 0
+order by sha256, data is null, id;
+
+-- variants belong to the content they were made from, so equal images share them
+alter table image_variants add column if not exists source_sha256 varchar(64);
+
+update image_variants v
+set source_sha256 = i.sha256
+from images i
+where i.id = v.image_id;
+
+delete from image_variants where source_sha256 is null;
+
+delete from image_variants v
+using image_variants d
+where v.source_sha256 = d.source_sha256 and v.width = d.width and v.id > d.id;
+
+insert into image_contents (sha256, size, ref_count, data)
+select distinct on (sha256) sha256, size, count(*) over (partition by sha256), data
+from image_variants
+order by sha256, data is null, id
+on conflict (sha256) do update set ref_count = image_contents.ref_count + excluded.ref_count;
+
+alter table image_variants drop column image_id;
+alter table image_variants drop column data;
+alter table image_variants alter column source_sha256 set not null;
+alter table image_variants add constraint source_sha256_fk foreign key (source_sha256) references image_contents (sha256) on delete cascade;
+alter table image_variants add constraint image_variants_source_width_uq unique (source_sha256, width);
+
+alter table images drop column data;
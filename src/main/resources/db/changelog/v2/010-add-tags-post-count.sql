@@ -0,0 +1,7 @@
+-- number of posts bound to the tag, kept up to date by every posts_tags insert and delete
+alter table tags add column if not exists post_count int not null default 0;
+
+update tags t
+set post_count = (select count(*) from posts_tags pt where pt.tag_id = t.id);
+
+create index if not exists tags_post_count_idx on tags (post_count desc, name);
@@ -0,0 +1,22 @@
+-- full-text search document: the title weighs more than the body when ranking
+alter table posts add column if not exists search_vector tsvector;
+
+create or replace function posts_search_vector_update() returns trigger as $$
+begin
+    new.search_vector := setweight(to_tsvector('russian', coalesce(new.title, '')), 'A')
+                             || setweight(to_tsvector('russian', coalesce(new.text, '')), 'B');
+    return new;
+end
+$$ language plpgsql;
+
+-- not a generated column: that would parse the whole text again on every like and comment count update
+drop trigger if exists posts_search_vector_trigger on posts;
+create trigger posts_search_vector_trigger
+    before insert or update of title, text on posts
+    for each row execute function posts_search_vector_update();
+
+update posts
+set search_vector = setweight(to_tsvector('russian', coalesce(title, '')), 'A')
+                        || setweight(to_tsvector('russian', coalesce(text, '')), 'B');
+
+create index if not exists posts_search_vector_idx on posts using gin (search_vector);
@@ -0,0 +1,6 @@
+-- \x02 and \x03 mark matches in search snippets, posts saved from now on cannot contain them
+update posts
+set title = translate(title, E'\x02\x03', ''),
+    text = translate(text, E'\x02\x03', ''),
+    preview = translate(preview, E'\x02\x03', '')
+where title ~ E'[\x02\x03]' or text ~ E'[\x02\x03]' or preview ~ E'[\x02\x03]';
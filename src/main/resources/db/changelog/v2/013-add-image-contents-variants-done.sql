@@ -0,0 +1,3 @@
+-- set once the variants of the content are made or turned out not to be needed;
+-- until then the original only stands in for them and must not be cached for good
+alter table image_contents add column if not exists variants_done boolean not null default false;
@@ -0,0 +1,55 @@
+package ru.yandex.myblog.configuration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.thymeleaf.ThymeleafProperties;
+import org.springframework.context.support.StaticApplicationContext;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
+
+class ThymeleafConfigurationTest {
+
+    private static final List<String> TEMPLATES = List.of("posts", "post", "add-post");
+
+    private final ThymeleafConfiguration configuration = new ThymeleafConfiguration();
+    private final ThymeleafProperties properties = new ThymeleafProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SpringTemplateEngine templateEngine;
+
+    @BeforeEach
+    void setUp() {
+        SpringResourceTemplateResolver templateResolver =
+                (SpringResourceTemplateResolver) configuration.templateResolver(properties);
+        templateResolver.setApplicationContext(new StaticApplicationContext());
+        templateEngine = configuration.templateEngine(templateResolver, 10, 10);
+        configuration.templateCacheMetrics(templateEngine).bindTo(meterRegistry);
+    }
+
+    @Test
+    void templatePrecompiler_ShouldParseTemplatesIntoCache() throws Exception {
+        configuration.templatePrecompiler(templateEngine, properties, TEMPLATES).run(null);
+
+        assertEquals(3.0, meterRegistry.get("cache.size").tag("cache", "thymeleaf-templates").gauge().value());
+
+        templateEngine.processThrottled("posts", new Context());
+
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", "thymeleaf-templates", "result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void templatePrecompiler_ShouldSkipWhenCacheDisabled() throws Exception {
+        properties.setCache(false);
+
+        configuration.templatePrecompiler(templateEngine, properties, TEMPLATES).run(null);
+
+        assertEquals(0.0, meterRegistry.get("cache.size").tag("cache", "thymeleaf-templates").gauge().value());
+    }
+}
@@ -1,12 +1,16 @@
 package ru.yandex.myblog.controller;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,10 +27,19 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.servlet.View;
 import ru.yandex.myblog.model.domain.Post;
+import ru.yandex.myblog.model.dto.FeedCacheKey;
+import ru.yandex.myblog.model.dto.FeedCursor;
+import ru.yandex.myblog.model.dto.FeedPage;
+import ru.yandex.myblog.model.dto.FeedView;
 import ru.yandex.myblog.model.dto.Paging;
+import ru.yandex.myblog.model.dto.TagCount;
 import ru.yandex.myblog.model.mappers.PostMapper;
 import ru.yandex.myblog.model.mappers.PostMapperImpl;
+import ru.yandex.myblog.service.FeedCache;
+import ru.yandex.myblog.service.FeedRowCache;
 import ru.yandex.myblog.service.FeedService;
+import ru.yandex.myblog.service.PostCountCache;
+import ru.yandex.myblog.service.TopTagsCache;
 
 @WebMvcTest(controllers = {FeedController.class, PostMapper.class})
 class FeedControllerTest {
@@ -37,21 +50,71 @@ class FeedControllerTest {
     @MockitoBean
     private FeedService feedService;
 
+    @MockitoBean
+    private PostCountCache postCountCache;
+
+    @MockitoBean
+    private FeedCache feedCache;
+
+    private static final String FEED_ETAG = "W/\"1-7\"";
+
+    @MockitoBean
+    private FeedRowCache feedRowCache;
+
+    @MockitoBean
+    private TopTagsCache topTagsCache;
+
+    @BeforeEach
+    void setUp() {
+        when(feedCache.eTag()).thenReturn(FEED_ETAG);
+        when(feedCache.lastModified()).thenReturn(Instant.parse("2025-01-01T00:00:00Z"));
+        when(feedCache.get(any(FeedCacheKey.class), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<FeedView>>getArgument(1).get());
+    }
+
     @Test
     void getFeed_ShouldReturnPostsViewWithDefaultParameters() throws Exception {
         List<Post> mockPosts = Collections.singletonList(new Post(1L, "Test Post", "Content", 10));
         Paging mockPaging = new Paging(1, 10, false, false);
 
-        when(feedService.getPosts("", 10, 1)).thenReturn(mockPosts);
-        when(feedService.getPageInfo(10, 1, "")).thenReturn(mockPaging);
+        when(feedService.getPostsPage("", 10, 1)).thenReturn(new FeedPage(mockPosts, mockPaging));
+        when(postCountCache.getCount()).thenReturn(1);
 
         mockMvc.perform(get("/posts"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("posts"))
+                .andExpect(model().attribute("postsCount", 1))
         ;
 
-        verify(feedService).getPosts("", 10, 1);
-        verify(feedService).getPageInfo(10, 1, "");
+        verify(feedService).getPostsPage("", 10, 1);
+    }
+
+    @Test
+    void getFeed_ShouldRenderTagCloud() throws Exception {
+        Paging mockPaging = new Paging(1, 10, false, false);
+        when(feedService.getPostsPage("", 10, 1)).thenReturn(new FeedPage(List.of(), mockPaging));
+        when(topTagsCache.getTop(anyInt())).thenReturn(List.of(new TagCount("java", 4), new TagCount("spring", 1)));
+
+        mockMvc.perform(get("/posts"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("font-size: 160%")))
+                .andExpect(content().string(containsString("/posts?search=spring&amp;pageSize=10")))
+                .andExpect(content().string(containsString("#spring")));
+    }
+
+    @Test
+    void getFeed_ShouldSearchByTextWithoutFeedCache() throws Exception {
+        Post found = new Post(1L, "Test Post", "Content", 10);
+        found.setSnippet("a <mark>word</mark> here");
+        when(feedService.searchPosts("word", "", 10, 1)).thenReturn(new FeedPage(List.of(found), new Paging(1, 10, false, false)));
+
+        mockMvc.perform(get("/posts").param("query", " word "))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("query", "word"))
+                .andExpect(model().attribute("postsCount", nullValue()));
+
+        verify(feedCache, never()).get(any(), any());
+        verify(postCountCache, never()).getCount();
     }
 
     @Test
@@ -60,16 +123,16 @@ class FeedControllerTest {
         List<Post> mockPosts = Collections.singletonList(new Post(1L, "Test Post", "Content", 10));
         Paging mockPaging = new Paging(1, 10, false, false);
 
-        when(feedService.getPosts(searchTerm, 10, 1)).thenReturn(mockPosts);
-        when(feedService.getPageInfo(10, 1, searchTerm)).thenReturn(mockPaging);
+        when(feedService.getPostsPage(searchTerm, 10, 1)).thenReturn(new FeedPage(mockPosts, mockPaging));
 
         mockMvc.perform(get("/posts")
                         .param("search", searchTerm))
                 .andExpect(status().isOk())
-                .andExpect(view().name("posts"));
+                .andExpect(view().name("posts"))
+                .andExpect(model().attribute("postsCount", nullValue()));
 
-        verify(feedService).getPosts(searchTerm, 10, 1);
-        verify(feedService).getPageInfo(10, 1, searchTerm);
+        verify(feedService).getPostsPage(searchTerm, 10, 1);
+        verify(postCountCache, never()).getCount();
     }
 
     @Test
@@ -79,8 +142,7 @@ class FeedControllerTest {
         List<Post> mockPosts = Collections.singletonList(new Post(1L, "Test Post", "Content", 10));
         Paging mockPaging = new Paging(pageNumber, pageSize, true, true);
 
-        when(feedService.getPosts("", pageSize, pageNumber)).thenReturn(mockPosts);
-        when(feedService.getPageInfo(pageSize, pageNumber, "")).thenReturn(mockPaging);
+        when(feedService.getPostsPage("", pageSize, pageNumber)).thenReturn(new FeedPage(mockPosts, mockPaging));
 
         mockMvc.perform(get("/posts")
                         .param("pageSize", String.valueOf(pageSize))
@@ -88,20 +150,74 @@ class FeedControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(view().name("posts"));
 
-        verify(feedService).getPosts("", pageSize, pageNumber);
-        verify(feedService).getPageInfo(pageSize, pageNumber, "");
+        verify(feedService).getPostsPage("", pageSize, pageNumber);
     }
 
     @Test
     void getFeed_ShouldHandleEmptyResults() throws Exception {
-        when(feedService.getPosts(anyString(), anyInt(), anyInt())).thenReturn(Collections.emptyList());
-        when(feedService.getPageInfo(anyInt(), anyInt(), anyString())).thenReturn(new Paging(1, 10, false, false));
+        when(feedService.getPostsPage(anyString(), anyInt(), anyInt()))
+                .thenReturn(new FeedPage(Collections.emptyList(), new Paging(1, 10, false, false)));
 
         mockMvc.perform(get("/posts"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("posts"));
 
-        verify(feedService).getPosts("", 10, 1);
-        verify(feedService).getPageInfo(10, 1, "");
+        verify(feedService).getPostsPage("", 10, 1);
+    }
+
+    @Test
+    void getFeed_ShouldUseCursorPagingWhenAfterTokenGiven() throws Exception {
+        FeedCursor cursor = FeedCursor.olderThan(42L);
+        when(feedService.getPostsPage("", 10, cursor))
+                .thenReturn(new FeedPage(Collections.emptyList(), Paging.cursor(10, null, "prev")));
+
+        mockMvc.perform(get("/posts").param("after", cursor.encode()))
+                .andExpect(status().isOk())
+                .andExpect(view().name("posts"));
+
+        verify(feedService).getPostsPage("", 10, cursor);
+        verify(feedService, never()).getPostsPage(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void getFeed_ShouldServeCachedViewWithoutLoadingPage() throws Exception {
+        FeedView cached = new FeedView(Collections.emptyList(), new Paging(1, 10, false, false));
+        when(feedCache.get(eq(new FeedCacheKey("", 10, 1, null)), any())).thenReturn(cached);
+
+        mockMvc.perform(get("/posts"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("paging", cached.paging()));
+
+        verify(feedRowCache).render(eq(cached.posts()), any(), any());
+
+        verifyNoInteractions(feedService);
+    }
+
+    @Test
+    void getFeed_ShouldAnswerNotModifiedWhenFeedUnchanged() throws Exception {
+        mockMvc.perform(get("/posts").header("If-None-Match", FEED_ETAG))
+                .andExpect(status().isNotModified());
+
+        verifyNoInteractions(feedService, feedRowCache);
+        verify(feedCache, never()).get(any(), any());
+    }
+
+    @Test
+    void getFeed_ShouldSendValidators() throws Exception {
+        when(feedService.getPostsPage("", 10, 1))
+                .thenReturn(new FeedPage(Collections.emptyList(), new Paging(1, 10, false, false)));
+
+        mockMvc.perform(get("/posts"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", FEED_ETAG))
+                .andExpect(header().string("Last-Modified", "Wed, 01 Jan 2025 00:00:00 GMT"));
+    }
+
+    @Test
+    void getFeed_ShouldRejectMalformedCursor() throws Exception {
+        mockMvc.perform(get("/posts").param("after", "not a cursor"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(feedService);
     }
-}
\ No newline at end of file
+}
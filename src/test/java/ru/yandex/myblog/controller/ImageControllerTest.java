@@ -2,57 +2,254 @@ package ru.yandex.myblog.controller;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.test.web.servlet.setup.MockMvcBuilders;
-import org.springframework.web.servlet.View;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
 import ru.yandex.myblog.model.exception.ImageNotFoundException;
 import ru.yandex.myblog.service.ImageService;
 
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(controllers = ImageController.class)
 class ImageControllerTest {
 
+    private static final long POST_ID = 1L;
+    private static final byte[] IMAGE_DATA = new byte[]{0x12, 0x34, 0x56, 0x78, 0x0A};
+    private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String ETAG = "\"" + SHA256 + "\"";
+
     @Autowired
     private MockMvc mockMvc;
 
     @MockitoBean
     private ImageService imageService;
 
+    private final ImageInfo image = new ImageInfo(1L, POST_ID, "test.png", IMAGE_DATA.length, MediaType.IMAGE_PNG_VALUE, SHA256);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            OutputStream out = invocation.getArgument(3);
+            out.write(Arrays.copyOfRange(IMAGE_DATA, (int) offset, (int) (offset + length)));
+            return null;
+        }).when(imageService).writeTo(eq(image), anyLong(), anyLong(), any());
+    }
 
     @Test
-    void displayImage_ShouldReturnImage() throws Exception {
-        long postId = 1L;
-        byte[] imageData = new byte[]{0x12, 0x34, 0x56};
-        ImageBlob mockImage = new ImageBlob(1L, postId,  MediaType.IMAGE_JPEG_VALUE, imageData);
+    void displayImage_ShouldStreamWholeImage() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
 
-        when(imageService.getForPost(postId)).thenReturn(mockImage);
+        MvcResult result = mockMvc.perform(get("/images/{post_id}", POST_ID))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(get("/images/{post_id}", postId))
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().longValue("Content-Length", IMAGE_DATA.length))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(content().bytes(IMAGE_DATA));
+
+        verify(imageService).writeTo(eq(image), eq(0L), eq((long) IMAGE_DATA.length), any());
+    }
+
+    @Test
+    void displayImage_ShouldStreamRequestedRange() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        MvcResult result = mockMvc.perform(get("/images/{post_id}", POST_ID).header("Range", "bytes=1-2"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 1-2/5"))
+                .andExpect(header().longValue("Content-Length", 2))
+                .andExpect(content().bytes(new byte[]{0x34, 0x56}));
+    }
+
+    @Test
+    void displayImage_ShouldStreamSuffixRange() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        MvcResult result = mockMvc.perform(get("/images/{post_id}", POST_ID).header("Range", "bytes=-2"))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 3-4/5"))
+                .andExpect(content().bytes(new byte[]{0x78, 0x0A}));
+    }
+
+    @Test
+    void displayImage_ShouldRejectUnsatisfiableRange() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        mockMvc.perform(get("/images/{post_id}", POST_ID).header("Range", "bytes=10-20"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */5"));
+
+        verify(imageService, never()).writeTo(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void displayImage_ShouldIgnoreMalformedRange() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        MvcResult result = mockMvc.perform(get("/images/{post_id}", POST_ID).header("Range", "pages=1"))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+    @Test
+    void displayImage_ShouldHandOverFileToSendfileWhenSupported() throws Exception {
+        Path file = Path.of("/var/images/9f/86/9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+        when(imageService.getFile(image)).thenReturn(Optional.of(file));
+
+        mockMvc.perform(get("/images/{post_id}", POST_ID)
+                        .header("Range", "bytes=1-2")
+                        .requestAttr("org.apache.tomcat.sendfile.support", true))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().longValue("Content-Length", 2))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.filename", file.toString()))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.start", 1L))
+                .andExpect(request().attribute("org.apache.tomcat.sendfile.end", 3L));
+
+        verify(imageService, never()).writeTo(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void displayImage_ShouldStreamFileWhenSendfileUnsupported() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+        when(imageService.getFile(image)).thenReturn(Optional.of(Path.of("/var/images/file")));
+
+        MvcResult result = mockMvc.perform(get("/images/{post_id}", POST_ID))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+    @Test
+    void displayImage_ShouldRequireRevalidationOfMutableUrl() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        mockMvc.perform(get("/images/{post_id}", POST_ID))
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andExpect(header().string("ETag", ETAG));
+    }
+
+    @Test
+    void displayImageVersion_ShouldBeCachedAsImmutable() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        MvcResult result = mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, SHA256))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"))
+                .andExpect(header().stringValues("ETag", ETAG))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
-                .andExpect(content().bytes(imageData));
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+    @Test
+    void displayImageVersion_ShouldAnswerNotModifiedForKnownHash() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, SHA256).header("If-None-Match", ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"));
+
+        verify(imageService, never()).writeTo(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void displayImageVersion_ShouldServeVariantForRequestedWidth() throws Exception {
+        ImageVariant variant = new ImageVariant(2L, image, 640, 3, MediaType.IMAGE_PNG_VALUE, "variant");
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+        when(imageService.getVariant(image, 640)).thenReturn(variant);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(3)).write(new byte[]{1, 2, 3});
+            return null;
+        }).when(imageService).writeTo(eq(variant), eq(0L), eq(3L), any());
+
+        MvcResult result = mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, SHA256).param("w", "640"))
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"))
+                .andExpect(header().string("ETag", "\"variant\""))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void displayImageVersion_ShouldNotCacheOriginalStandingInForPendingVariant() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+        when(imageService.getVariant(image, 640)).thenReturn(image);
+
+        mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, SHA256).param("w", "640"))
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andExpect(header().string("ETag", ETAG));
+    }
+
+    @Test
+    void displayImageVersion_ShouldCacheOriginalWhenNoVariantWillBeMade() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+        when(imageService.getVariant(image, 1280)).thenReturn(image);
+        when(imageService.isVariantsDone(image)).thenReturn(true);
+
+        mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, SHA256).param("w", "1280"))
+                .andExpect(header().string("Cache-Control", "max-age=31536000, public, immutable"))
+                .andExpect(header().string("ETag", ETAG));
+    }
+
+    @Test
+    void displayImageVersion_ShouldKeepWidthWhenRedirecting() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
+
+        mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, "0000").param("w", "640"))
+                .andExpect(status().isFound())
+                .andExpect(redirectedUrl("/images/1/" + SHA256 + "?w=640"));
+    }
+
+    @Test
+    void displayImageVersion_ShouldRedirectOutdatedHashToCurrentImage() throws Exception {
+        when(imageService.getInfoForPost(POST_ID)).thenReturn(image);
 
-        verify(imageService).getForPost(postId);
+        mockMvc.perform(get("/images/{post_id}/{sha256}", POST_ID, "0000"))
+                .andExpect(status().isFound())
+                .andExpect(redirectedUrl("/images/1/" + SHA256))
+                .andExpect(header().string("Cache-Control", "no-store"));
     }
 
     @Test
     void displayImage_ShouldReturnNotFoundWhenImageDoesNotExist() throws Exception {
         Long postId = 999L;
-        when(imageService.getForPost(postId))
+        when(imageService.getInfoForPost(postId))
                 .thenThrow(new ImageNotFoundException("Image for post " + postId + " was not found"));
 
         mockMvc.perform(get("/images/{post_id}", postId))
@@ -61,7 +258,7 @@ class ImageControllerTest {
                 .andExpect(result -> assertEquals("Image for post 999 was not found",
                         result.getResolvedException().getMessage()));
 
-        verify(imageService).getForPost(postId);
+        verify(imageService).getInfoForPost(postId);
     }
 
-}
\ No newline at end of file
+}
@@ -1,16 +1,24 @@
 package ru.yandex.myblog.controller;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.time.Instant;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import ru.yandex.myblog.model.domain.Post;
+import ru.yandex.myblog.model.dto.PostVersion;
+import ru.yandex.myblog.model.exception.PostNotFoundException;
 import ru.yandex.myblog.service.PostService;
 
 @WebMvcTest(controllers = PostController.class)
@@ -22,20 +30,49 @@ class PostControllerTest {
     @MockitoBean
     private PostService postService;
 
+    private static final PostVersion VERSION = new PostVersion(1L, 3L, Instant.parse("2025-01-01T00:00:00Z"));
+
     @Test
     void getPost_ShouldReturnPostView() throws Exception {
         long postId = 1L;
         Post mockPost = new Post(postId, "Test Post", "Content", 10);
+        when(postService.getPostVersion(postId)).thenReturn(VERSION);
         when(postService.getPost(postId)).thenReturn(mockPost);
 
         mockMvc.perform(get("/posts/{id}", postId))
                 .andExpect(status().isOk())
                 .andExpect(view().name("post"))
-                .andExpect(model().attributeExists("post"));
+                .andExpect(model().attributeExists("post"))
+                .andExpect(header().string("ETag", "\"1-3\""))
+                .andExpect(header().exists("Last-Modified"))
+                .andExpect(header().string("Cache-Control", "no-cache"));
 
         verify(postService).getPost(postId);
     }
 
+    @Test
+    void getPost_ShouldAnswerNotModifiedWithoutLoadingPost() throws Exception {
+        long postId = 1L;
+        when(postService.getPostVersion(postId)).thenReturn(VERSION);
+
+        mockMvc.perform(get("/posts/{id}", postId).header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(postService, never()).getPost(anyLong());
+    }
+
+    @Test
+    void getPost_ShouldRenderAgainWhenVersionChanged() throws Exception {
+        long postId = 1L;
+        when(postService.getPostVersion(postId)).thenReturn(VERSION);
+        when(postService.getPost(postId)).thenReturn(new Post(postId, "Test Post", "Content", 10));
+
+        mockMvc.perform(get("/posts/{id}", postId).header("If-None-Match", "\"1-2\""))
+                .andExpect(status().isOk())
+                .andExpect(view().name("post"));
+    }
+
     @Test
     void savePost_ShouldCreatePostAndRedirect() throws Exception {
         String title = "New Post";
@@ -55,6 +92,18 @@ class PostControllerTest {
         verify(postService).createPost(title, text, image, tags);
     }
 
+    @Test
+    void savePost_ShouldRejectTooLargeImage() throws Exception {
+        when(postService.createPost(any(), any(), any(), any())).thenThrow(new MaxUploadSizeExceededException(10));
+
+        mockMvc.perform(multipart("/posts")
+                        .file(new MockMultipartFile("image", "big.jpg", "image/jpeg", new byte[11]))
+                        .param("title", "title")
+                        .param("text", "text")
+                        .param("tags", "tag"))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
     @Test
     void updatePost_ShouldUpdatePostAndRedirect() throws Exception {
         long postId = 1L;
@@ -100,16 +149,40 @@ class PostControllerTest {
     @Test
     void likePost_ShouldLikePostAndRedirect() throws Exception {
         long postId = 1L;
-        boolean like = true;
-        Post mockPost = new Post(postId, "Test Post", "Content", 11);
-        when(postService.likePost(postId, like)).thenReturn(mockPost);
+        when(postService.likePost(postId, true)).thenReturn(11);
 
         mockMvc.perform(post("/posts/{id}/like", postId)
                         .param("like", "true"))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/posts/1"));
 
-        verify(postService).likePost(postId, like);
+        verify(postService).likePost(postId, true);
+        verify(postService, never()).getPost(anyLong());
+    }
+
+    @Test
+    void likePost_ShouldReturnNewCountAsJson() throws Exception {
+        long postId = 1L;
+        when(postService.likePost(postId, false)).thenReturn(9);
+
+        mockMvc.perform(post("/posts/{id}/like", postId)
+                        .param("like", "false")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.postId").value(1))
+                .andExpect(jsonPath("$.likesCount").value(9));
+
+        verify(postService, never()).getPost(anyLong());
+    }
+
+    @Test
+    void likePost_ShouldReturnNotFoundForMissingPost() throws Exception {
+        when(postService.likePost(999L, true)).thenThrow(new PostNotFoundException("Post with id 999 not found"));
+
+        mockMvc.perform(post("/posts/{id}/like", 999L)
+                        .param("like", "true")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
     }
 
     @Test
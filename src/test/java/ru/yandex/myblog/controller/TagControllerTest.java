@@ -0,0 +1,45 @@
+package ru.yandex.myblog.controller;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.myblog.model.dto.TagCount;
+import ru.yandex.myblog.service.TopTagsCache;
+
+@WebMvcTest(controllers = TagController.class)
+class TagControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private TopTagsCache topTagsCache;
+
+    @Test
+    void getTopTags_ShouldReturnTagsWithCounts() throws Exception {
+        when(topTagsCache.getTop(2)).thenReturn(List.of(new TagCount("java", 4), new TagCount("spring", 1)));
+
+        mockMvc.perform(get("/tags/top").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("java"))
+                .andExpect(jsonPath("$[0].postCount").value(4))
+                .andExpect(jsonPath("$[1].name").value("spring"));
+    }
+
+    @Test
+    void getTopTags_ShouldUseDefaultLimit() throws Exception {
+        mockMvc.perform(get("/tags/top"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+
+        verify(topTagsCache).getTop(20);
+    }
+}
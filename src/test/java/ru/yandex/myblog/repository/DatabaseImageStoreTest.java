@@ -0,0 +1,97 @@
+package ru.yandex.myblog.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {JdbcImageRepo.class, DatabaseImageStore.class})
+class DatabaseImageStoreTest extends PostgresBaseIntegrationTest {
+
+    private static final byte[] DATA = "test image data".getBytes();
+
+    @Autowired
+    private JdbcImageRepo repo;
+
+    @Autowired
+    private DatabaseImageStore store;
+
+    private ImageInfo image;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM images");
+        jdbcTemplate.update("DELETE FROM image_contents");
+        jdbcTemplate.update("DELETE FROM posts");
+        jdbcTemplate.update("ALTER SEQUENCE posts_id_seq RESTART WITH 1;");
+        jdbcTemplate.update("INSERT INTO posts(title, text, likesCount) VALUES ('Post 1', 'Content 1', 10)");
+
+        repo.acquireContent("hash", DATA.length);
+        long imageId = repo.save(1L, "test.jpg", "image/jpeg", "hash", DATA.length);
+        image = repo.getInfoByPostId(1L).orElseThrow();
+        assertEquals(imageId, image.getId());
+    }
+
+    @Test
+    void store_ShouldWriteDataColumn() {
+        store.store(image, new ByteArrayInputStream(DATA));
+
+        assertArrayEquals(DATA, repo.readInlineData("hash"));
+    }
+
+    @Test
+    void copyTo_ShouldCopyRequestedRange() throws IOException {
+        store.store(image, new ByteArrayInputStream(DATA));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        store.copyTo(image, 5, 5, out);
+
+        assertArrayEquals("image".getBytes(), out.toByteArray());
+    }
+
+    @Test
+    void copyTo_ShouldFailWhenDataIsMissing() {
+        assertThrows(IOException.class, () -> store.copyTo(image, 0, DATA.length, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void copyTo_ShouldFailWhenContentIsReleasedWhileReading() {
+        byte[] large = new byte[DatabaseImageStore.CHUNK_SIZE * 2];
+        repo.acquireContent("large", large.length);
+        ImageInfo largeImage = new ImageInfo(2L, 1L, "large.jpg", large.length, "image/jpeg", "large");
+        store.store(largeImage, new ByteArrayInputStream(large));
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void write(byte[] b) throws IOException {
+                super.write(b);
+                // the image is replaced and its old content released between two chunks
+                jdbcTemplate.update("DELETE FROM image_contents WHERE sha256 = 'large'");
+            }
+        };
+
+        assertThrows(IOException.class, () -> store.copyTo(largeImage, 0, large.length, out));
+        assertEquals(DatabaseImageStore.CHUNK_SIZE, out.size());
+    }
+
+    @Test
+    void store_ShouldKeepVariantApartFromOriginal() throws IOException {
+        store.store(image, new ByteArrayInputStream(DATA));
+        byte[] small = "small".getBytes();
+        repo.acquireContent("small", small.length);
+        long variantId = repo.saveVariant(image, 640, "image/jpeg", "small", small.length);
+        ImageVariant variant = new ImageVariant(variantId, image, 640, small.length, "image/jpeg", "small");
+
+        store.store(variant, new ByteArrayInputStream(small));
+
+        assertArrayEquals(small, store.open(variant).readAllBytes());
+        assertArrayEquals(DATA, store.open(image).readAllBytes());
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.myblog.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FileSystemImageStoreTest {
+
+    private static final byte[] DATA = "test".getBytes();
+    private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @TempDir
+    private Path root;
+
+    private final JdbcImageRepo imageRepo = mock(JdbcImageRepo.class);
+
+    private FileSystemImageStore store;
+
+    private final ImageInfo image = new ImageInfo(1L, 1L, "test.jpg", DATA.length, "image/jpeg", SHA256);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new FileSystemImageStore(root, imageRepo);
+    }
+
+    @Test
+    void store_ShouldWriteContentUnderHashPath() throws IOException {
+        store.store(image, new ByteArrayInputStream(DATA));
+
+        Path file = root.resolve("9f").resolve("86").resolve(SHA256);
+        assertEquals(file, store.file(image).orElseThrow());
+        assertArrayEquals(DATA, Files.readAllBytes(file));
+        try (var leftovers = Files.list(root.resolve("tmp"))) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    @Test
+    void store_ShouldKeepExistingFileForSameContent() throws IOException {
+        store.store(image, new ByteArrayInputStream(DATA));
+        ImageInfo copy = new ImageInfo(2L, 2L, "copy.jpg", DATA.length, "image/jpeg", SHA256);
+
+        store.store(copy, new ByteArrayInputStream(DATA));
+
+        assertArrayEquals(DATA, Files.readAllBytes(store.file(copy).orElseThrow()));
+    }
+
+    @Test
+    void store_ShouldRejectContentNotMatchingHash() {
+        assertThrows(IOException.class, () -> store.store(image, new ByteArrayInputStream("other".getBytes())));
+        assertTrue(store.file(image).isEmpty());
+    }
+
+    @Test
+    void copyTo_ShouldCopyRequestedRange() throws IOException {
+        store.store(image, new ByteArrayInputStream(DATA));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        store.copyTo(image, 1, 2, out);
+
+        assertArrayEquals("es".getBytes(), out.toByteArray());
+    }
+
+    @Test
+    void copyTo_ShouldReadContentNotYetMigratedFromDatabase() throws IOException {
+        when(imageRepo.readChunk(SHA256, 1, 2)).thenReturn("es".getBytes());
+        when(imageRepo.readChunk(SHA256, 0, 4)).thenReturn(DATA);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        store.copyTo(image, 1, 2, out);
+
+        assertArrayEquals("es".getBytes(), out.toByteArray());
+        assertArrayEquals(DATA, store.open(image).readAllBytes());
+    }
+
+    @Test
+    void copyTo_ShouldContinueFromFileWhenMigratedWhileReading() throws IOException {
+        when(imageRepo.readChunk(SHA256, 0, 4)).thenReturn("te".getBytes());
+        when(imageRepo.readChunk(SHA256, 2, 2)).then(invocation -> {
+            // the migrator stores the file and clears the data between two chunks
+            store.store(image, new ByteArrayInputStream(DATA));
+            return new byte[0];
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        store.copyTo(image, 0, DATA.length, out);
+
+        assertArrayEquals(DATA, out.toByteArray());
+    }
+
+    @Test
+    void copyTo_ShouldFailWhenContentIsNowhere() {
+        when(imageRepo.readChunk(SHA256, 0, 4)).thenReturn(new byte[0]);
+
+        assertThrows(IOException.class, () -> store.copyTo(image, 0, DATA.length, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void remove_ShouldDeleteFile() throws IOException {
+        store.store(image, new ByteArrayInputStream(DATA));
+
+        store.remove(image);
+
+        assertFalse(Files.exists(store.path(SHA256)));
+        assertTrue(store.file(image).isEmpty());
+    }
+
+    @Test
+    void path_ShouldRejectNonHashNames() {
+        assertThrows(IllegalArgumentException.class, () -> store.path("../../etc/passwd"));
+    }
+}
@@ -4,17 +4,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ContextConfiguration;
-import org.springframework.web.multipart.MultipartFile;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(classes = {JdbcImageRepo.class})
 class JdbcImageRepoTest extends PostgresBaseIntegrationTest {
 
+    private static final String TEST_SHA256 = "69d16b4e1e3b8ae0b4e6bd1a0ccee1c4ab08b2d2ecd1b1bbcb1a1c0c36c1da5e";
+
     @Autowired
     private JdbcImageRepo repo;
 
@@ -22,32 +26,99 @@ class JdbcImageRepoTest extends PostgresBaseIntegrationTest {
     void setUp() {
         jdbcTemplate.update("DELETE FROM images");
         jdbcTemplate.update("ALTER SEQUENCE images_id_seq RESTART WITH 1;");
+        jdbcTemplate.update("DELETE FROM image_contents");
 
         jdbcTemplate.update("DELETE FROM posts");
         jdbcTemplate.update("ALTER SEQUENCE posts_id_seq RESTART WITH 1;");
 
         jdbcTemplate.update("INSERT INTO posts(title, text, likesCount) VALUES ('Post 1', 'Content 1', 10)");
         jdbcTemplate.update("INSERT INTO posts(title, text, likesCount) VALUES ('Post 2', 'Content 2', 2)");
-        jdbcTemplate.update("INSERT INTO images( post_id, file_name, data) VALUES (1, 'test.jpg', decode('7465737420696D6167652064617461', 'hex'))");
+        jdbcTemplate.update("INSERT INTO images( post_id, file_name, sha256, size) VALUES (1, 'test.jpg', '" + TEST_SHA256 + "', 15)");
+        jdbcTemplate.update("INSERT INTO image_contents(sha256, size, ref_count, data) VALUES ('" + TEST_SHA256 + "', 15, 1, decode('7465737420696D6167652064617461', 'hex'))");
     }
 
     @Test
-    void save_ShouldStoreImage_WhenValidInput(){
+    void save_ShouldStoreMetadataWithoutData(){
         long postId = 2L;
-        byte[] testData = "test image data".getBytes();
-        MultipartFile file = new MockMultipartFile(
-                "test.jpg", "test.jpg", "image/jpeg", testData
-        );
 
-        boolean result = repo.save(postId, file);
+        long imageId = repo.save(postId, "test.jpg", "image/jpeg", TEST_SHA256, 15);
 
-        assertTrue(result);
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM images WHERE post_id = ?",
-                Integer.class,
-                postId
-        );
-        assertEquals(1, count);
+        ImageInfo saved = repo.getInfoByPostId(postId).orElseThrow();
+        assertEquals(imageId, saved.getId());
+        assertEquals(15, saved.getSize());
+        assertEquals(TEST_SHA256, saved.getSha256());
+    }
+
+    @Test
+    void acquireContent_ShouldCountReferences() {
+        assertEquals(2, repo.acquireContent(TEST_SHA256, 15));
+        assertEquals(1, repo.acquireContent("other", 5));
+        assertEquals(1, repo.releaseContent(TEST_SHA256));
+    }
+
+    @Test
+    void deleteContent_ShouldKeepReferencedContent() {
+        repo.deleteContent(TEST_SHA256);
+        assertTrue(repo.isReferenced(TEST_SHA256));
+
+        assertEquals(0, repo.releaseContent(TEST_SHA256));
+        repo.deleteContent(TEST_SHA256);
+
+        assertFalse(repo.isReferenced(TEST_SHA256));
+        assertEquals(0, repo.releaseContent(TEST_SHA256));
+    }
+
+    @Test
+    void deleteContent_ShouldDeleteVariantsMadeFromIt() {
+        ImageInfo image = repo.getInfoByPostId(1L).orElseThrow();
+        repo.saveVariant(image, 640, "image/jpeg", "variant", 5);
+
+        repo.releaseContent(TEST_SHA256);
+        repo.deleteContent(TEST_SHA256);
+
+        assertTrue(repo.getVariants(image).isEmpty());
+    }
+
+    @Test
+    void getVariants_ShouldReturnVariantsNarrowestFirst() {
+        ImageInfo image = repo.getInfoByPostId(1L).orElseThrow();
+        long wide = repo.saveVariant(image, 1280, "image/jpeg", "wide", 10);
+        long narrow = repo.saveVariant(image, 640, "image/jpeg", "narrow", 5);
+
+        List<ImageVariant> variants = repo.getVariants(image);
+
+        assertEquals(List.of(narrow, wide), variants.stream().map(ImageVariant::getId).toList());
+        assertEquals(640, variants.getFirst().getWidth());
+        assertEquals(TEST_SHA256, variants.getFirst().getSourceSha256());
+        assertEquals(1L, variants.getFirst().getPostId());
+        assertEquals("narrow", variants.getFirst().getSha256());
+    }
+
+    @Test
+    void findImagesWithPendingVariants_ShouldSkipDoneContents() {
+        repo.acquireContent("variant", 5);
+
+        assertEquals(List.of(1L), repo.findImagesWithPendingVariants(0, 10).stream().map(ImageInfo::getId).toList());
+        assertFalse(repo.areVariantsDone(TEST_SHA256));
+
+        repo.markVariantsDone(TEST_SHA256);
+
+        assertTrue(repo.areVariantsDone(TEST_SHA256));
+        assertEquals(List.of(), repo.findImagesWithPendingVariants(0, 10));
+    }
+
+    @Test
+    void findContentsWithInlineData_ShouldSkipClearedContents() {
+        repo.acquireContent("other", 5);
+
+        assertEquals(List.of(TEST_SHA256), repo.findContentsWithInlineData("", 10));
+        assertEquals(List.of(), repo.findContentsWithInlineData(TEST_SHA256, 10));
+
+        repo.clearInlineData(TEST_SHA256);
+
+        assertEquals(List.of(), repo.findContentsWithInlineData("", 10));
+        assertNull(repo.readInlineData(TEST_SHA256));
+        assertNull(repo.readInlineData("missing"));
     }
 
     @Test
@@ -81,22 +152,43 @@ class JdbcImageRepoTest extends PostgresBaseIntegrationTest {
 
 
     @Test
-    void getByPostId_ShouldReturnImage_WhenImageExists() {
-        long postId = 1L;
+    void readChunk_ShouldReturnRequestedSlice() {
+        assertArrayEquals("test".getBytes(), repo.readChunk(TEST_SHA256, 0, 4));
+        assertArrayEquals("image".getBytes(), repo.readChunk(TEST_SHA256, 5, 5));
+        assertArrayEquals("data".getBytes(), repo.readChunk(TEST_SHA256, 11, 100));
+    }
+
+    @Test
+    void readChunk_ShouldReturnEmptyArray_WhenNoImageExists() {
+        assertEquals(0, repo.readChunk("missing", 0, 4).length);
+    }
 
-        ImageBlob result = repo.getByPostId(postId);
+    @Test
+    void getInfoByPostId_ShouldReturnMetadataWithoutData() {
+        Optional<ImageInfo> result = repo.getInfoByPostId(1L);
 
-        assertNotNull(result);
-        assertEquals(postId, result.getPost_id());
-        assertEquals("test.jpg", result.getFileName());
-        assertNotNull(result.getData());
+        assertTrue(result.isPresent());
+        assertEquals("test.jpg", result.get().getFileName());
+        assertEquals("test image data".length(), result.get().getSize());
+        assertTrue(result.get().isExists());
     }
 
     @Test
-    void getByPostId_ShouldThrowException_WhenNoImageExists() {
-        long postId = 99L;
+    void getInfoByPostId_ShouldReturnEmpty_WhenNoImageExists() {
+        assertTrue(repo.getInfoByPostId(99L).isEmpty());
+    }
+
+    @Test
+    void getInfoByPostIds_ShouldReturnMetadataKeyedByPost() {
+        repo.save(2L, "empty.jpg", "image/jpeg", null, 0);
+
+        Map<Long, ImageInfo> result = repo.getInfoByPostIds(List.of(1L, 2L, 3L));
 
-        assertThrows(EmptyResultDataAccessException.class, () -> repo.getByPostId(postId));
+        assertEquals(2, result.size());
+        assertTrue(result.get(1L).isExists());
+        assertEquals("image/jpeg", result.get(2L).getContentType());
+        assertFalse(result.get(2L).isExists());
+        assertFalse(result.containsKey(3L));
     }
 
-}
\ No newline at end of file
+}
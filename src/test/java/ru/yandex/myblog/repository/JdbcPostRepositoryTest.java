@@ -6,9 +6,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ContextConfiguration;
 import ru.yandex.myblog.model.domain.Post;
+import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.PostVersion;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,31 +54,73 @@ class JdbcPostRepositoryTest extends PostgresBaseIntegrationTest {
         assertEquals("First Post", posts.get(0).getTitle());
     }
 
+    @Test
+    void getPosts_shouldSelectPreviewInsteadOfText() {
+        long id = repo.saveWithTags("Long Post", "Long Content", "Long", List.of()).getId();
+
+        Post feedPost = repo.getPosts(0, 1).get(0);
+        assertEquals(id, feedPost.getId());
+        assertEquals("Long", feedPost.getPreview());
+        assertNull(feedPost.getText());
+    }
+
+    @Test
+    void getPosts_shouldSelectVersion() {
+        repo.touch(3L);
+
+        assertEquals(1L, repo.getPosts(0, 1).get(0).getVersion());
+    }
+
     @Test
     void getPostsByTag_shouldReturnFilteredPosts() {
-        List<Post> techPosts = repo.getPostsByTag("tech", 0, 10);
+        List<Post> techPosts = repo.getPostsByTag(1L, 0, 10);
         assertEquals(2, techPosts.size());
         assertTrue(techPosts.stream().anyMatch(p -> p.getTitle().equals("First Post")));
         assertTrue(techPosts.stream().anyMatch(p -> p.getTitle().equals("Second Post")));
 
-        List<Post> sciencePosts = repo.getPostsByTag("science", 0, 10);
+        List<Post> sciencePosts = repo.getPostsByTag(2L, 0, 10);
         assertEquals(1, sciencePosts.size());
         assertEquals("Second Post", sciencePosts.get(0).getTitle());
     }
 
     @Test
-    void getTotalPostsCount_shouldReturnCorrectCount() {
-        assertEquals(3, repo.getTotalPostsCount());
+    void getPostsByTag_shouldPageInPostIdOrder() {
+        assertEquals(List.of(2L), repo.getPostsByTag(1L, 0, 1).stream().map(Post::getId).toList());
+        assertEquals(List.of(1L), repo.getPostsByTag(1L, 1, 1).stream().map(Post::getId).toList());
+        assertTrue(repo.getPostsByTag(99L, 0, 10).isEmpty());
+    }
 
-        repo.save(new Post(0L,"Fourth Post", "Content 4", 2));
-        assertEquals(4, repo.getTotalPostsCount());
+    @Test
+    void getPostsOlderThan_shouldReturnPostsBelowCursorNewestFirst() {
+        List<Post> posts = repo.getPostsOlderThan(3L, 10);
+        assertEquals(List.of(2L, 1L), posts.stream().map(Post::getId).toList());
+
+        posts = repo.getPostsOlderThan(3L, 1);
+        assertEquals(List.of(2L), posts.stream().map(Post::getId).toList());
     }
 
     @Test
-    void getTotalPostsCount_withTag_shouldReturnFilteredCount() {
-        assertEquals(2, repo.getTotalPostsCount("tech"));
-        assertEquals(1, repo.getTotalPostsCount("science"));
-        assertEquals(0, repo.getTotalPostsCount("nonexistent"));
+    void getPostsNewerThan_shouldReturnClosestPostsAboveCursorNewestFirst() {
+        List<Post> posts = repo.getPostsNewerThan(1L, 1);
+        assertEquals(List.of(2L), posts.stream().map(Post::getId).toList());
+
+        posts = repo.getPostsNewerThan(1L, 10);
+        assertEquals(List.of(3L, 2L), posts.stream().map(Post::getId).toList());
+    }
+
+    @Test
+    void getPostsByTagCursor_shouldFilterByTag() {
+        assertEquals(List.of(1L), repo.getPostsByTagOlderThan(1L, 2L, 10).stream().map(Post::getId).toList());
+        assertEquals(List.of(2L), repo.getPostsByTagNewerThan(1L, 1L, 10).stream().map(Post::getId).toList());
+        assertTrue(repo.getPostsByTagNewerThan(2L, 2L, 10).isEmpty());
+    }
+
+    @Test
+    void getTotalPostsCount_shouldReturnCorrectCount() {
+        assertEquals(3, repo.getTotalPostsCount());
+
+        repo.saveWithTags("Fourth Post", "Content 4", "Content 4", List.of());
+        assertEquals(4, repo.getTotalPostsCount());
     }
 
     @Test
@@ -92,49 +139,131 @@ class JdbcPostRepositoryTest extends PostgresBaseIntegrationTest {
     }
 
     @Test
-    void likePost_shouldIncrementLikesCount() {
-        int initialLikes = jdbcTemplate.queryForObject(
-                "SELECT likesCount FROM posts WHERE id = 1", Integer.class);
+    void addLikes_shouldApplyDeltas() {
+        int initialLikes = repo.findById(1L).get().getLikesCount();
+        int otherLikes = repo.findById(2L).get().getLikesCount();
 
-        repo.likePost(1L);
+        repo.addLikes(Map.of(1L, 3L, 2L, -1L));
 
-        int updatedLikes = jdbcTemplate.queryForObject(
-                "SELECT likesCount FROM posts WHERE id = 1", Integer.class);
-        assertEquals(initialLikes + 1, updatedLikes);
+        assertEquals(initialLikes + 3, repo.findById(1L).get().getLikesCount());
+        assertEquals(otherLikes - 1, repo.findById(2L).get().getLikesCount());
     }
 
     @Test
-    void unlikePost_shouldDecrementLikesCount() {
-        int initialLikes = repo.findById(1L).get().getLikesCount();
+    void addLikes_shouldNotGoBelowZero() {
+        repo.addLikes(Map.of(3L, -2L));
+
+        assertEquals(0, repo.findById(3L).get().getLikesCount());
+    }
+
+    @Test
+    void findVersionById_shouldReturnInitialVersion() {
+        PostVersion version = repo.findVersionById(1L).orElseThrow();
+
+        assertEquals(1L, version.postId());
+        assertEquals(0L, version.version());
+        assertNotNull(version.updatedAt());
+        assertTrue(repo.findVersionById(999L).isEmpty());
+    }
 
-        repo.unlikePost(1L);
+    @Test
+    void saveWithTags_shouldInsertPostAndBindNewAndExistingTags() {
+        Post post = repo.saveWithTags("New Post", "New Content", "New", List.of("tech", "fresh"));
 
-        int updatedLikes = repo.findById(1L).get().getLikesCount();
-        assertEquals(initialLikes - 1, updatedLikes);
+        assertEquals(4L, post.getId());
+        assertEquals(Set.of("tech", "fresh"), post.getTags().stream().map(Tag::getName).collect(Collectors.toSet()));
+        assertEquals(1L, post.getTags().stream().filter(tag -> tag.getName().equals("tech")).findFirst().orElseThrow().getId());
+        assertEquals("New Content", repo.findById(4L).orElseThrow().getText());
+        long fresh = post.getTags().stream().filter(tag -> tag.getName().equals("fresh")).findFirst().orElseThrow().getId();
+        assertEquals(List.of(4L), repo.getPostsByTag(fresh, 0, 10).stream().map(Post::getId).toList());
+        assertEquals(3, repo.getPostsByTag(1L, 0, 10).size());
+        assertEquals(1, jdbcTemplate.queryForObject("select post_count from tags where name = 'fresh'", Integer.class));
+    }
 
-        repo.unlikePost(3L);
-        int zeroLikes = repo.findById(3L).get().getLikesCount();
-        assertEquals(0, zeroLikes);
+    @Test
+    void saveWithTags_shouldSavePostWithoutTags() {
+        Post post = repo.saveWithTags("New Post", "New Content", "New", List.of());
+
+        assertTrue(post.getTags().isEmpty());
+        Post saved = repo.findById(post.getId()).orElseThrow();
+        assertEquals("New Post", saved.getTitle());
+        assertEquals("New Content", saved.getText());
+        assertEquals(0, saved.getLikesCount());
     }
 
     @Test
-    void save_shouldCreateNewPostAndReturnId() {
-        Post newPost = new Post(0, "New Post", "New Content", 0);
-        long id = repo.save(newPost);
+    void searchPosts_shouldRankTitleMatchesFirst() {
+        repo.saveWithTags("Cooking", "A recipe for a postgres cake", "A recipe", List.of());
+        repo.saveWithTags("Postgres tips", "Indexes and vacuum", "Indexes", List.of());
 
-        assertTrue(id > 0);
+        List<Post> found = repo.searchPosts("postgres", null, 0, 10);
 
-        Optional<Post> savedPost = repo.findById(id);
-        assertTrue(savedPost.isPresent());
-        assertEquals("New Post", savedPost.get().getTitle());
-        assertEquals("New Content", savedPost.get().getText());
-        assertEquals(0, savedPost.get().getLikesCount());
+        assertEquals(List.of("Postgres tips", "Cooking"), found.stream().map(Post::getTitle).toList());
+        assertTrue(found.get(1).getSnippet().contains(
+                JdbcPostRepository.MATCH_START + "postgres" + JdbcPostRepository.MATCH_END + " cake"));
+        assertEquals(1, repo.searchPosts("postgres", null, 1, 10).size());
+        assertTrue(repo.searchPosts("mysql", null, 0, 10).isEmpty());
+    }
+
+    @Test
+    void searchPosts_shouldMatchWordFormsAndFilterByTag() {
+        repo.saveWithTags("Indexing", "Building indexes", "Building", List.of("tech"));
+        repo.saveWithTags("More indexes", "Text", "Text", List.of());
+
+        assertEquals(2, repo.searchPosts("index", null, 0, 10).size());
+        assertEquals(List.of("Indexing"), repo.searchPosts("index", 1L, 0, 10).stream().map(Post::getTitle).toList());
+    }
+
+    @Test
+    void searchPosts_shouldFollowEditedText() {
+        repo.update(1L, null, "Now about kubernetes", null);
+
+        assertEquals(1L, repo.searchPosts("kubernetes", null, 0, 10).get(0).getId());
+    }
+
+    @Test
+    void findLikesCount_shouldReturnStoredCount() {
+        repo.addLikes(Map.of(1L, 3L));
+
+        assertEquals(Optional.of(repo.findById(1L).get().getLikesCount()), repo.findLikesCount(1L));
+        assertTrue(repo.findLikesCount(999L).isEmpty());
+    }
+
+    @Test
+    void mutations_shouldBumpVersion() {
+        repo.addLikes(Map.of(1L, 1L));
+        repo.addLikes(Map.of(1L, -1L));
+        repo.changeCommentsCount(1L, 1);
+        repo.touch(1L);
+        repo.update(1L, "First Post", null, null);
+
+        assertEquals(5L, repo.findVersionById(1L).get().version());
+        assertEquals(0L, repo.findVersionById(2L).get().version());
+    }
+
+    @Test
+    void addLikes_shouldNotBumpVersionWhenNothingChanged() {
+        repo.addLikes(Map.of(3L, -1L));
+
+        assertEquals(0L, repo.findVersionById(3L).get().version());
+    }
+
+    @Test
+    void changeCommentsCount_shouldApplyDelta() {
+        repo.changeCommentsCount(1L, 1);
+        repo.changeCommentsCount(1L, 1);
+        repo.changeCommentsCount(1L, -1);
+
+        assertEquals(1, repo.findById(1L).get().getCommentsCount());
+        assertEquals(0, repo.findById(2L).get().getCommentsCount());
+        assertEquals(1, repo.getPosts(2, 1).get(0).getCommentsCount());
     }
 
     @Test
     void update_shouldModifyExistingPost() {
-        Post postToUpdate = new Post(1L, "Updated Title", "Updated Content", 10);
-        repo.update(postToUpdate);
+        repo.update(1L, "Updated Title", "Updated Content", "Updated");
+
+        assertEquals("Updated", repo.getPosts(2, 1).get(0).getPreview());
 
         Optional<Post> updatedPost = repo.findById(1L);
         assertTrue(updatedPost.isPresent());
@@ -143,6 +272,16 @@ class JdbcPostRepositoryTest extends PostgresBaseIntegrationTest {
         // Likes count shouldn't change
         assertEquals(10, updatedPost.get().getLikesCount());
     }
+
+    @Test
+    void update_shouldKeepColumnsNotGiven() {
+        repo.update(1L, "Updated Title", null, null);
+
+        Post updatedPost = repo.findById(1L).get();
+        assertEquals("Updated Title", updatedPost.getTitle());
+        assertEquals("Content 1", updatedPost.getText());
+        assertEquals(1L, repo.findVersionById(1L).get().version());
+    }
     
     @Test
     void deleteById_shouldReturnZeroWhenPostNotExists() {
@@ -8,12 +8,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.TagCount;
 
 import java.util.Arrays;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(classes = {JdbcTagRepository.class})
@@ -42,23 +45,43 @@ public class JdbcTagRepositoryTest extends PostgresBaseIntegrationTest{
     }
 
     @Test
-    void getTagsForPost_ShouldReturnTags_WhenPostHasTags() {
-        long postId = 1L;
+    void findAll_ShouldReturnWholeVocabulary() {
+        List<Tag> result = repo.findAll();
 
-        List<Tag> result = repo.getTagsForPost(postId);
+        assertEquals(List.of("tag1", "tag2", "tag3"), result.stream().map(Tag::getName).sorted().toList());
+    }
 
-        assertEquals(2, result.size());
-        assertEquals("tag1", result.get(0).getName());
-        assertEquals("tag2", result.get(1).getName());
+    @Test
+    void getTagsByIds_ShouldReturnMatchingTags() {
+        assertEquals(List.of(new Tag(2L, "tag2")), repo.getTagsByIds(List.of(2L, 99L)));
+        assertTrue(repo.getTagsByIds(List.of()).isEmpty());
     }
 
     @Test
-    void getTagsForPost_ShouldReturnEmptyList_WhenPostHasNoTags() {
-        long postId = 99L;
+    void getTagIdsForPost_ShouldReturnTagIds_WhenPostHasTags() {
+        assertEquals(List.of(1L, 2L), repo.getTagIdsForPost(1L));
+    }
+
+    @Test
+    void getTagIdsForPost_ShouldReturnEmptyList_WhenPostHasNoTags() {
+        assertTrue(repo.getTagIdsForPost(99L).isEmpty());
+    }
+
+    @Test
+    void getTagIdsForPosts_ShouldGroupTagIdsByPost() {
+        jdbcTemplate.update("INSERT INTO posts_tags(post_id, tag_id) VALUES (2, 3)");
+
+        Map<Long, List<Long>> result = repo.getTagIdsForPosts(List.of(1L, 2L, 99L));
 
-        List<Tag> result = repo.getTagsForPost(postId);
+        assertEquals(2, result.size());
+        assertEquals(List.of(1L, 2L), result.get(1L));
+        assertEquals(List.of(3L), result.get(2L));
+        assertFalse(result.containsKey(99L));
+    }
 
-        assertTrue(result.isEmpty());
+    @Test
+    void getTagIdsForPosts_ShouldReturnEmptyMap_WhenNoIdsGiven() {
+        assertTrue(repo.getTagIdsForPosts(List.of()).isEmpty());
     }
 
     @Test
@@ -102,6 +125,54 @@ public class JdbcTagRepositoryTest extends PostgresBaseIntegrationTest{
         assertEquals(2, relationshipCount);
     }
 
+    @Test
+    void bindTagsToPost_ShouldIgnoreExistingRelationships() {
+        repo.bindTagsToPost(1L, List.of(new Tag(1L, "tag1"), new Tag(3L, "tag3")));
+
+        int relationshipCount = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM posts_tags WHERE post_id = ?",
+                Integer.class,
+                1L
+        );
+        assertEquals(3, relationshipCount);
+    }
+
+    @Test
+    void bindTagsToPost_ShouldCountOnlyNewRelationships() {
+        repo.bindTagsToPost(1L, List.of(new Tag(1L, "tag1"), new Tag(3L, "tag3")));
+        repo.bindTagsToPost(2L, List.of(new Tag(3L, "tag3")));
+
+        assertEquals(0, postCount(1L));
+        assertEquals(2, postCount(3L));
+    }
+
+    @Test
+    void unbindAndDelete_ShouldUncountRemovedRelationships() {
+        repo.bindTagsToPost(2L, List.of(new Tag(1L, "tag1"), new Tag(2L, "tag2")));
+
+        repo.unbindTagsFromPost(2L, List.of(2L, 3L));
+        assertEquals(1, postCount(1L));
+        assertEquals(0, postCount(2L));
+
+        repo.deleteTagToPostConnections(2L);
+        assertEquals(0, postCount(1L));
+    }
+
+    @Test
+    void getTopTags_ShouldOrderByPostCount() {
+        repo.bindTagsToPost(2L, List.of(new Tag(3L, "tag3"), new Tag(2L, "tag2")));
+        jdbcTemplate.update("UPDATE tags SET post_count = 5 WHERE id = 3");
+
+        assertEquals(List.of(new TagCount("tag3", 5), new TagCount("tag2", 1)), repo.getTopTags(10));
+        assertEquals(List.of(new TagCount("tag3", 5)), repo.getTopTags(1));
+    }
+
+    @Test
+    void findIdByName_ShouldResolveTagId() {
+        assertEquals(2L, repo.findIdByName("tag2").orElseThrow());
+        assertTrue(repo.findIdByName("nonexistent").isEmpty());
+    }
+
     @Test
     void getTagsByNames_ShouldReturnMatchingTags() {
         List<String> tagNames = Arrays.asList("tag1", "tag2", "nonexistent");
@@ -113,6 +184,15 @@ public class JdbcTagRepositoryTest extends PostgresBaseIntegrationTest{
         assertTrue(result.stream().anyMatch(t -> t.getName().equals("tag2")));
     }
 
+    @Test
+    void unbindTagsFromPost_ShouldRemoveOnlyGivenTags() {
+        int deletedCount = repo.unbindTagsFromPost(1L, List.of(2L, 3L));
+
+        assertEquals(1, deletedCount);
+        assertEquals(List.of(1L), repo.getTagIdsForPost(1L));
+        assertEquals(0, repo.unbindTagsFromPost(1L, List.of()));
+    }
+
     @Test
     void deleteTagToPostConnections_ShouldRemoveRelationships() {
         long postId = 1L;
@@ -134,4 +214,8 @@ public class JdbcTagRepositoryTest extends PostgresBaseIntegrationTest{
         );
         assertEquals(0, remainingCount);
     }
-}
\ No newline at end of file
+
+    private int postCount(long tagId) {
+        return jdbcTemplate.queryForObject("SELECT post_count FROM tags WHERE id = ?", Integer.class, tagId);
+    }
+}
@@ -8,9 +8,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import ru.yandex.myblog.model.domain.Comment;
+import ru.yandex.myblog.model.event.PostChangedEvent;
 import ru.yandex.myblog.model.exception.CommentNotFoundException;
 import ru.yandex.myblog.repository.JdbcCommentRepository;
+import ru.yandex.myblog.repository.JdbcPostRepository;
 
 import org.slf4j.Logger;
 
@@ -20,6 +23,12 @@ class CommentServiceTest {
     @Mock
     private JdbcCommentRepository commentRepo;
 
+    @Mock
+    private JdbcPostRepository postRepo;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @Mock
     private Logger log;
 
@@ -34,6 +43,8 @@ class CommentServiceTest {
         commentService.save(postId, commentText);
 
         verify(commentRepo).save(argThat(comment -> comment.getPostId() == postId && comment.getText().equals(commentText)));
+        verify(postRepo).changeCommentsCount(postId, 1);
+        verify(eventPublisher).publishEvent(PostChangedEvent.of(postId, PostChangedEvent.Type.COMMENTED));
     }
 
     @Test
@@ -48,6 +59,7 @@ class CommentServiceTest {
         commentService.update(commentId, postId, commentText);
 
         verify(commentRepo).update(comment);
+        verify(postRepo).touch(postId);
     }
 
     @Test
@@ -72,6 +84,8 @@ class CommentServiceTest {
         commentService.delete(commentId, postId);
 
         verify(commentRepo).deleteById(commentId, postId);
+        verify(postRepo).changeCommentsCount(postId, -1);
+        verify(eventPublisher).publishEvent(PostChangedEvent.of(postId, PostChangedEvent.Type.COMMENTED));
     }
 
     @Test
@@ -82,5 +96,6 @@ class CommentServiceTest {
         when(commentRepo.deleteById(commentId, postId)).thenReturn(false);
 
         Assertions.assertThrows(CommentNotFoundException.class, () ->  commentService.delete(commentId, postId));
+        verifyNoInteractions(postRepo, eventPublisher);
     }
 }
\ No newline at end of file
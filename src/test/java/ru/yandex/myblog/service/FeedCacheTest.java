@@ -0,0 +1,134 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import ru.yandex.myblog.model.dto.FeedCacheKey;
+import ru.yandex.myblog.model.dto.FeedPostDto;
+import ru.yandex.myblog.model.dto.FeedView;
+import ru.yandex.myblog.model.dto.Paging;
+import ru.yandex.myblog.model.event.LikesFlushedEvent;
+import ru.yandex.myblog.model.event.PostChangedEvent;
+
+class FeedCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private FeedCache feedCache;
+
+    @BeforeEach
+    void setUp() {
+        feedCache = new FeedCache(DataSize.ofMegabytes(1), meterRegistry);
+    }
+
+    @Test
+    void get_ShouldLoadOnceAndServeFromCache() {
+        FeedCacheKey key = new FeedCacheKey("", 10, 1, null);
+
+        FeedView first = feedCache.get(key, () -> load(1L));
+        FeedView second = feedCache.get(key, () -> load(1L));
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "feed").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void onLikesFlushed_ShouldEvictPagesContainingLikedPost() {
+        FeedCacheKey withPost = new FeedCacheKey("", 10, 1, null);
+        FeedCacheKey withoutPost = new FeedCacheKey("", 10, 2, null);
+        feedCache.get(withPost, () -> load(1L));
+        feedCache.get(withoutPost, () -> load(2L));
+
+        feedCache.onLikesFlushed(new LikesFlushedEvent(Set.of(1L)));
+        feedCache.get(withPost, () -> load(1L));
+        feedCache.get(withoutPost, () -> load(2L));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void onPostChanged_ShouldEvictUntaggedAndAffectedTagFeedsOnCreate() {
+        FeedCacheKey all = new FeedCacheKey("", 10, 1, null);
+        FeedCacheKey java = new FeedCacheKey("java", 10, 1, null);
+        FeedCacheKey kotlin = new FeedCacheKey("kotlin", 10, 1, null);
+        feedCache.get(all, () -> load(1L));
+        feedCache.get(java, () -> load(1L));
+        feedCache.get(kotlin, () -> load(2L));
+
+        feedCache.onPostChanged(new PostChangedEvent(3L, PostChangedEvent.Type.CREATED, Set.of("java")));
+        feedCache.get(all, () -> load(3L));
+        feedCache.get(java, () -> load(3L));
+        feedCache.get(kotlin, () -> load(2L));
+
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void get_ShouldNotKeepPageLoadedConcurrentlyWithChange() {
+        FeedCacheKey key = new FeedCacheKey("", 10, 1, null);
+
+        feedCache.get(key, () -> {
+            feedCache.onPostChanged(PostChangedEvent.of(5L, PostChangedEvent.Type.COMMENTED));
+            return load(1L);
+        });
+        feedCache.get(key, () -> load(1L));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_ShouldNotKeepPageLoadedConcurrentlyWithLikesFlush() {
+        FeedCacheKey key = new FeedCacheKey("", 10, 1, null);
+
+        feedCache.get(key, () -> {
+            FeedView view = load(1L);
+            feedCache.onLikesFlushed(new LikesFlushedEvent(Set.of(1L)));
+            return view;
+        });
+        feedCache.get(key, () -> load(1L));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void eTag_ShouldChangeWhenPostChanged() {
+        String before = feedCache.eTag();
+        assertEquals(before, feedCache.eTag());
+
+        feedCache.onPostChanged(PostChangedEvent.of(1L, PostChangedEvent.Type.COMMENTED));
+
+        assertNotEquals(before, feedCache.eTag());
+        assertTrue(feedCache.eTag().startsWith("W/\""));
+    }
+
+    @Test
+    void eTag_ShouldChangeWhenLikesFlushed() {
+        String before = feedCache.eTag();
+        Instant lastModified = feedCache.lastModified();
+
+        feedCache.onLikesFlushed(new LikesFlushedEvent(Set.of(1L)));
+
+        assertNotEquals(before, feedCache.eTag());
+        assertFalse(feedCache.lastModified().isBefore(lastModified));
+    }
+
+    private FeedView load(long postId) {
+        loads.incrementAndGet();
+        FeedPostDto post = new FeedPostDto();
+        post.setId(postId);
+        post.setTitle("title " + postId);
+        post.setTextPreview("preview");
+        post.setTags(List.of());
+        return new FeedView(List.of(post), new Paging(1, 10, false, false));
+    }
+}
@@ -0,0 +1,121 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.thymeleaf.ThymeleafProperties;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
+import ru.yandex.myblog.configuration.ThymeleafConfiguration;
+import ru.yandex.myblog.model.dto.FeedPostDto;
+
+class FeedRowCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    private FeedRowCache feedRowCache;
+
+    @BeforeEach
+    void setUp() {
+        ThymeleafConfiguration configuration = new ThymeleafConfiguration();
+        SpringResourceTemplateResolver templateResolver =
+                (SpringResourceTemplateResolver) configuration.templateResolver(new ThymeleafProperties());
+        templateResolver.setApplicationContext(new StaticApplicationContext());
+        SpringTemplateEngine templateEngine = configuration.templateEngine(templateResolver, 10, 10);
+        feedRowCache = new FeedRowCache(templateEngine, DataSize.ofMegabytes(1), meterRegistry);
+    }
+
+    @Test
+    void render_ShouldRenderRowWithPostData() {
+        List<String> rows = feedRowCache.render(List.of(post(1L, 5)), request, response);
+
+        assertEquals(1, rows.size());
+        assertTrue(rows.getFirst().startsWith("<tr>"));
+        assertTrue(rows.getFirst().contains("Title 1"));
+        assertTrue(rows.getFirst().contains("#java "));
+        assertTrue(rows.getFirst().contains("/images/1/abc"));
+    }
+
+    @Test
+    void render_ShouldShowHighlightedSnippetInsteadOfPreview() {
+        FeedPostDto post = post(1L, 5);
+        post.setSnippet("found <mark>word</mark>");
+
+        String row = feedRowCache.render(List.of(post), request, response).getFirst();
+
+        assertTrue(row.contains("found <mark>word</mark>"));
+        assertFalse(row.contains("Preview"));
+    }
+
+    @Test
+    void render_ShouldNotCacheSearchRows() {
+        FeedPostDto post = post(1L, 5);
+        post.setSnippet("found <mark>word</mark>");
+
+        feedRowCache.render(List.of(post), request, response);
+        feedRowCache.render(List.of(post), request, response);
+
+        assertEquals(0.0, hits());
+        assertEquals(0L, (long) meterRegistry.get("cache.size").tag("cache", "feed-rows").gauge().value());
+    }
+
+    @Test
+    void render_ShouldReuseRowOfUnchangedPost() {
+        feedRowCache.render(List.of(post(1L, 5)), request, response);
+        feedRowCache.render(List.of(post(1L, 5)), request, response);
+
+        assertEquals(1.0, hits());
+    }
+
+    @Test
+    void render_ShouldRenderAgainWhenPostChanged() {
+        feedRowCache.render(List.of(post(1L, 5)), request, response);
+
+        FeedPostDto changed = post(1L, 6);
+        changed.setTitle("Edited");
+        List<String> rows = feedRowCache.render(List.of(changed), request, response);
+
+        assertEquals(0.0, hits());
+        assertTrue(rows.getFirst().contains("Edited"));
+    }
+
+    @Test
+    void render_ShouldRenderAgainWhenLikesArePending() {
+        feedRowCache.render(List.of(post(1L, 5)), request, response);
+
+        FeedPostDto liked = post(1L, 5);
+        liked.setPendingLikes(1);
+        liked.setLikesCount(43);
+        List<String> rows = feedRowCache.render(List.of(liked), request, response);
+
+        assertEquals(0.0, hits());
+        assertTrue(rows.getFirst().contains("43"));
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "feed-rows").tag("result", "hit").functionCounter().count();
+    }
+
+    private FeedPostDto post(long id, long version) {
+        FeedPostDto post = new FeedPostDto();
+        post.setId(id);
+        post.setVersion(version);
+        post.setTitle("Title " + id);
+        post.setTextPreview("Preview");
+        post.setLikesCount(42);
+        post.setImagePresent(true);
+        post.setImageSha256("abc");
+        post.setTags(List.of("java"));
+        return post;
+    }
+}
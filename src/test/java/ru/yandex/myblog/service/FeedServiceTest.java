@@ -3,23 +3,25 @@ package ru.yandex.myblog.service;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import ru.yandex.myblog.model.domain.Comment;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import ru.yandex.myblog.model.domain.ImageInfo;
 import ru.yandex.myblog.model.domain.Post;
 import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.FeedCursor;
+import ru.yandex.myblog.model.dto.FeedPage;
 import ru.yandex.myblog.model.dto.Paging;
-import ru.yandex.myblog.repository.JdbcCommentRepository;
 import ru.yandex.myblog.repository.JdbcImageRepo;
 import ru.yandex.myblog.repository.JdbcPostRepository;
-import ru.yandex.myblog.repository.JdbcTagRepository;
 
 @ExtendWith(MockitoExtension.class)
 class FeedServiceTest {
@@ -27,163 +29,262 @@ class FeedServiceTest {
     @Mock
     private JdbcPostRepository postRepo;
     @Mock
-    private JdbcTagRepository tagRepo;
-    @Mock
-    private JdbcCommentRepository commentsRepo;
+    private TagDictionary tagDictionary;
     @Mock
     private JdbcImageRepo imageRepo;
+    @Mock
+    private LikeBuffer likeBuffer;
 
     @InjectMocks
     private FeedService feedService;
 
     private final Post testPost = new Post(1L, "Test Post", "Test Content", 10);
     private final Tag testTag = new Tag(1L, "test-tag");
-    private final Comment testComment = new Comment(1L, 1L, "Test comment");
-    private final ImageBlob testImage = new ImageBlob(1L, 1L, "image/jpeg", new byte[]{});
+    private final ImageInfo testImage = new ImageInfo(1L, 1L, "test.jpg", 3L, "image/jpeg", "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
 
 
     @Test
-    void getPosts_ShouldReturnPostsWithoutTagFilter() {
+    void getPostsPage_ShouldReturnPostsWithoutTagFilter() {
         int pageSize = 10;
         int pageNumber = 1;
         int offset = 0;
         String searchedTag = "";
 
-        when(postRepo.getPosts(offset, pageSize)).thenReturn(Collections.singletonList(testPost));
-        when(tagRepo.getTagsForPost(testPost.getId())).thenReturn(Collections.singletonList(testTag));
-        when(commentsRepo.getAllForPost(testPost.getId())).thenReturn(Collections.singletonList(testComment));
-        when(imageRepo.getByPostId(testPost.getId())).thenReturn(testImage);
+        List<Long> postIds = List.of(testPost.getId());
 
-        List<Post> result = feedService.getPosts(searchedTag, pageSize, pageNumber);
+        when(postRepo.getPosts(offset, pageSize + 1)).thenReturn(Collections.singletonList(testPost));
+        when(tagDictionary.getTagsForPosts(postIds)).thenReturn(Map.of(testPost.getId(), List.of(testTag)));
+        when(imageRepo.getInfoByPostIds(postIds)).thenReturn(Map.of(testPost.getId(), testImage));
+
+        List<Post> result = feedService.getPostsPage(searchedTag, pageSize, pageNumber).posts();
 
         assertEquals(1, result.size());
         Post returnedPost = result.get(0);
         assertEquals(testPost.getId(), returnedPost.getId());
         assertEquals(1, returnedPost.getTags().size());
-        assertEquals(1, returnedPost.getComments().size());
+        assertTrue(returnedPost.getComments().isEmpty());
         assertEquals(testImage, returnedPost.getImage());
 
-        verify(postRepo).getPosts(offset, pageSize);
-        verify(postRepo, never()).getPostsByTag(anyString(), anyInt(), anyInt());
-        verify(tagRepo).getTagsForPost(testPost.getId());
-        verify(commentsRepo).getAllForPost(testPost.getId());
-        verify(imageRepo).getByPostId(testPost.getId());
+        verify(postRepo).getPosts(offset, pageSize + 1);
+        verify(postRepo, never()).getPostsByTag(anyLong(), anyInt(), anyInt());
+        verify(tagDictionary).getTagsForPosts(postIds);
+        verify(imageRepo).getInfoByPostIds(postIds);
+        verify(tagDictionary, never()).getTagsForPost(anyLong());
+    }
+
+    @Test
+    void searchPosts_ShouldEscapeSnippetAndMarkMatches() {
+        Post post = new Post(1L, "Test Post", null, 10);
+        post.setSnippet("<b>" + JdbcPostRepository.MATCH_START + "word" + JdbcPostRepository.MATCH_END);
+        when(postRepo.searchPosts("word", null, 10, 11)).thenReturn(new ArrayList<>(List.of(post)));
+
+        FeedPage page = feedService.searchPosts("word", "", 10, 2);
+
+        assertEquals("&lt;b&gt;<mark>word</mark>", page.posts().get(0).getSnippet());
+        assertFalse(page.paging().hasNext());
+        assertTrue(page.paging().hasPrevious());
+        verify(imageRepo).getInfoByPostIds(List.of(1L));
+    }
+
+    @Test
+    void searchPosts_ShouldReturnEmptyPageForUnknownTag() {
+        when(tagDictionary.findId("unknown")).thenReturn(Optional.empty());
+
+        FeedPage page = feedService.searchPosts("word", "unknown", 10, 1);
+
+        assertTrue(page.posts().isEmpty());
+        verify(postRepo, never()).searchPosts(any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void getPostsPage_ShouldAddPendingLikes() {
+        Post post = new Post(1L, "Test Post", "Test Content", 10);
+        when(postRepo.getPosts(0, 11)).thenReturn(Collections.singletonList(post));
+        when(likeBuffer.pending(1L)).thenReturn(2);
+
+        List<Post> result = feedService.getPostsPage("", 10, 1).posts();
+
+        assertEquals(12, result.get(0).getLikesCount());
+    }
+
+    @Test
+    void getPostsPage_ShouldHydrateWholePageWithFixedNumberOfQueries() {
+        int pageSize = 3;
+        Post first = new Post(3L, "Third", "Content 3", 0);
+        Post second = new Post(2L, "Second", "Content 2", 0);
+        Post third = new Post(1L, "First", "Content 1", 0);
+        List<Long> postIds = List.of(3L, 2L, 1L);
+
+        when(postRepo.getPosts(0, pageSize + 1)).thenReturn(List.of(first, second, third));
+        when(tagDictionary.getTagsForPosts(postIds)).thenReturn(Map.of(3L, List.of(testTag), 1L, List.of(testTag)));
+        when(imageRepo.getInfoByPostIds(postIds)).thenReturn(Map.of(1L, testImage));
+
+        List<Post> result = feedService.getPostsPage("", pageSize, 1).posts();
+
+        assertEquals(3, result.size());
+        assertEquals(1, result.get(0).getTags().size());
+        assertNull(result.get(0).getImage());
+        assertTrue(result.get(1).getTags().isEmpty());
+        assertEquals(testImage, result.get(2).getImage());
+
+        verify(tagDictionary, times(1)).getTagsForPosts(postIds);
+        verify(imageRepo, times(1)).getInfoByPostIds(postIds);
     }
 
     @Test
-    void getPosts_ShouldReturnPostsWithTagFilter() {
+    void getPostsPage_ShouldReturnPostsWithTagFilter() {
         int pageSize = 10;
         int pageNumber = 1;
         int offset = 0;
         String searchedTag = "test-tag";
 
-        when(postRepo.getPostsByTag(searchedTag, offset, pageSize)).thenReturn(Collections.singletonList(testPost));
-        when(tagRepo.getTagsForPost(testPost.getId())).thenReturn(Collections.singletonList(testTag));
-        when(commentsRepo.getAllForPost(testPost.getId())).thenReturn(Collections.singletonList(testComment));
-        when(imageRepo.getByPostId(testPost.getId())).thenReturn(testImage);
+        List<Long> postIds = List.of(testPost.getId());
 
-        List<Post> result = feedService.getPosts(searchedTag, pageSize, pageNumber);
+        when(tagDictionary.findId(searchedTag)).thenReturn(Optional.of(testTag.getId()));
+        when(postRepo.getPostsByTag(testTag.getId(), offset, pageSize + 1)).thenReturn(Collections.singletonList(testPost));
+        when(tagDictionary.getTagsForPosts(postIds)).thenReturn(Map.of(testPost.getId(), List.of(testTag)));
+        when(imageRepo.getInfoByPostIds(postIds)).thenReturn(Map.of(testPost.getId(), testImage));
+
+        List<Post> result = feedService.getPostsPage(searchedTag, pageSize, pageNumber).posts();
 
         assertEquals(1, result.size());
-        verify(postRepo).getPostsByTag(searchedTag, offset, pageSize);
+        verify(tagDictionary).findId(searchedTag);
+        verify(postRepo).getPostsByTag(testTag.getId(), offset, pageSize + 1);
         verify(postRepo, never()).getPosts(anyInt(), anyInt());
     }
 
     @Test
-    void getPosts_ShouldCalculateCorrectOffset() {
+    void getPostsPage_ShouldCalculateCorrectOffset() {
         int pageSize = 10;
         int pageNumber = 3;
         int expectedOffset = 20;
         String searchedTag = "";
 
-        when(postRepo.getPosts(expectedOffset, pageSize)).thenReturn(Collections.emptyList());
+        when(postRepo.getPosts(expectedOffset, pageSize + 1)).thenReturn(Collections.emptyList());
 
-        feedService.getPosts(searchedTag, pageSize, pageNumber);
+        feedService.getPostsPage(searchedTag, pageSize, pageNumber);
 
-        verify(postRepo).getPosts(expectedOffset, pageSize);
+        verify(postRepo).getPosts(expectedOffset, pageSize + 1);
+        verifyNoInteractions(tagDictionary, imageRepo);
     }
 
     @Test
-    void getPageInfo_ShouldReturnCorrectPagingWithoutTag() {
-        int pageSize = 10;
-        int pageNumber = 2;
-        String tag = "";
-        int totalCount = 25;
+    void getPostsPage_ShouldReturnFirstPageWithNextCursor() {
+        Post newest = new Post(3L, "Third", "Content 3", 0);
+        Post middle = new Post(2L, "Second", "Content 2", 0);
+        Post oldest = new Post(1L, "First", "Content 1", 0);
+        when(postRepo.getPosts(0, 3)).thenReturn(List.of(newest, middle, oldest));
+
+        FeedPage page = feedService.getPostsPage("", 2, null);
+
+        assertEquals(List.of(3L, 2L), page.posts().stream().map(Post::getId).toList());
+        assertTrue(page.paging().cursorBased());
+        assertTrue(page.paging().hasNext());
+        assertFalse(page.paging().hasPrevious());
+        assertEquals(FeedCursor.olderThan(2L), FeedCursor.decode(page.paging().nextCursor()));
+        verify(tagDictionary).getTagsForPosts(List.of(3L, 2L));
+    }
 
-        when(postRepo.getTotalPostsCount()).thenReturn(totalCount);
+    @Test
+    void getPostsPage_ShouldUseKeysetQueryForOlderCursor() {
+        when(tagDictionary.findId("test-tag")).thenReturn(Optional.of(testTag.getId()));
+        when(postRepo.getPostsByTagOlderThan(testTag.getId(), 5L, 11)).thenReturn(List.of(testPost));
 
-        Paging result = feedService.getPageInfo(pageSize, pageNumber, tag);
+        FeedPage page = feedService.getPostsPage("test-tag", 10, FeedCursor.olderThan(5L));
 
-        assertEquals(pageNumber, result.pageNumber());
-        assertEquals(pageSize, result.pageSize());
-        assertTrue(result.hasNext());
-        assertTrue(result.hasPrevious());
-        verify(postRepo).getTotalPostsCount();
-        verify(postRepo, never()).getTotalPostsCount(anyString());
+        assertEquals(1, page.posts().size());
+        assertFalse(page.paging().hasNext());
+        assertTrue(page.paging().hasPrevious());
+        assertEquals(FeedCursor.newerThan(testPost.getId()), FeedCursor.decode(page.paging().previousCursor()));
+        verify(postRepo, never()).getPostsByTag(anyLong(), anyInt(), anyInt());
     }
 
     @Test
-    void getPageInfo_ShouldReturnCorrectPagingWithTag() {
-        int pageSize = 10;
-        int pageNumber = 1;
-        String tag = "test-tag";
-        int totalCount = 5;
-
-        when(postRepo.getTotalPostsCount(tag)).thenReturn(totalCount);
+    void getPostsPage_ShouldReturnEmptyCursorPageForUnknownTag() {
+        when(tagDictionary.findId("unknown")).thenReturn(Optional.empty());
 
-        Paging result = feedService.getPageInfo(pageSize, pageNumber, tag);
+        FeedPage page = feedService.getPostsPage("unknown", 10, FeedCursor.olderThan(5L));
 
-        assertEquals(pageNumber, result.pageNumber());
-        assertEquals(pageSize, result.pageSize());
-        assertFalse(result.hasNext());
-        assertFalse(result.hasPrevious());
-        verify(postRepo).getTotalPostsCount(tag);
-        verify(postRepo, never()).getTotalPostsCount();
+        assertTrue(page.posts().isEmpty());
+        assertFalse(page.paging().hasNext());
+        verifyNoInteractions(postRepo);
     }
 
     @Test
-    void getPageInfo_ShouldHandleNullCount() {
-        int pageSize = 10;
-        int pageNumber = 1;
-        String tag = "non-existent-tag";
+    void getPostsPage_ShouldDropExtraNewestRowForNewerCursor() {
+        Post newest = new Post(5L, "Fifth", "Content 5", 0);
+        Post middle = new Post(4L, "Fourth", "Content 4", 0);
+        Post oldest = new Post(3L, "Third", "Content 3", 0);
+        when(postRepo.getPostsNewerThan(2L, 3)).thenReturn(List.of(newest, middle, oldest));
 
-        when(postRepo.getTotalPostsCount(tag)).thenReturn(null);
+        FeedPage page = feedService.getPostsPage("", 2, FeedCursor.newerThan(2L));
 
-        Paging result = feedService.getPageInfo(pageSize, pageNumber, tag);
+        assertEquals(List.of(4L, 3L), page.posts().stream().map(Post::getId).toList());
+        assertTrue(page.paging().hasNext());
+        assertTrue(page.paging().hasPrevious());
+    }
 
-        assertEquals(pageNumber, result.pageNumber());
-        assertEquals(pageSize, result.pageSize());
-        assertFalse(result.hasNext());
-        assertFalse(result.hasPrevious());
+    @Test
+    void getPostsPage_ShouldFallBackToFirstPageWhenNewerCursorReachesTop() {
+        Post newest = new Post(3L, "Third", "Content 3", 0);
+        Post middle = new Post(2L, "Second", "Content 2", 0);
+        when(postRepo.getPostsNewerThan(1L, 3)).thenReturn(List.of(newest));
+        when(postRepo.getPosts(0, 3)).thenReturn(List.of(newest, middle));
+
+        FeedPage page = feedService.getPostsPage("", 2, FeedCursor.newerThan(1L));
+
+        assertEquals(List.of(3L, 2L), page.posts().stream().map(Post::getId).toList());
+        assertFalse(page.paging().hasPrevious());
+        assertFalse(page.paging().hasNext());
     }
 
     @Test
-    void getPageInfo_ShouldHandleLastPageCorrectly() {
-        int pageSize = 10;
-        int pageNumber = 3;
-        String tag = "";
-        int totalCount = 25;
+    void getPostsPage_ShouldDeriveHasNextFromExtraRow() {
+        int pageSize = 2;
+        int pageNumber = 2;
+        Post newest = new Post(3L, "Third", "Content 3", 0);
+        Post middle = new Post(2L, "Second", "Content 2", 0);
+        Post oldest = new Post(1L, "First", "Content 1", 0);
+        when(postRepo.getPosts(2, 3)).thenReturn(List.of(newest, middle, oldest));
+
+        FeedPage page = feedService.getPostsPage("", pageSize, pageNumber);
+
+        assertEquals(List.of(3L, 2L), page.posts().stream().map(Post::getId).toList());
+        assertEquals(pageNumber, page.paging().pageNumber());
+        assertEquals(pageSize, page.paging().pageSize());
+        assertTrue(page.paging().hasNext());
+        assertTrue(page.paging().hasPrevious());
+        verify(postRepo, never()).getTotalPostsCount();
+    }
 
-        when(postRepo.getTotalPostsCount()).thenReturn(totalCount);
+    @Test
+    void getPostsPage_ShouldHandleLastPageCorrectly() {
+        when(postRepo.getPosts(20, 11)).thenReturn(List.of(testPost));
 
-        Paging result = feedService.getPageInfo(pageSize, pageNumber, tag);
+        Paging result = feedService.getPostsPage("", 10, 3).paging();
 
         assertFalse(result.hasNext());
         assertTrue(result.hasPrevious());
     }
 
     @Test
-    void getPageInfo_ShouldHandleFirstPageCorrectly() {
-        int pageSize = 10;
-        int pageNumber = 1;
-        String tag = "";
-        int totalCount = 25;
+    void getPostsPage_ShouldKeepPageNumbersForPageZero() {
+        Paging result = feedService.getPostsPage("", 10, 0).paging();
+
+        assertFalse(result.cursorBased());
+        assertEquals(0, result.pageNumber());
+    }
 
-        when(postRepo.getTotalPostsCount()).thenReturn(totalCount);
+    @Test
+    void getPostsPage_ShouldHandleEmptyTagFeed() {
+        String tag = "non-existent-tag";
+        when(tagDictionary.findId(tag)).thenReturn(Optional.empty());
 
-        Paging result = feedService.getPageInfo(pageSize, pageNumber, tag);
+        Paging result = feedService.getPostsPage(tag, 10, 1).paging();
 
-        assertTrue(result.hasNext());
+        assertEquals(1, result.pageNumber());
+        assertFalse(result.hasNext());
         assertFalse(result.hasPrevious());
+        verifyNoInteractions(postRepo);
     }
-}
\ No newline at end of file
+}
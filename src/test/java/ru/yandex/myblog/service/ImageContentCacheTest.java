@@ -0,0 +1,135 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import ru.yandex.myblog.model.domain.ImageInfo;
+
+class ImageContentCacheTest {
+
+    private static final byte[] DATA = "test image data".getBytes();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final ImageInfo image = new ImageInfo(1L, 1L, "test.png", DATA.length, "image/png", "hash");
+
+    private ImageContentCache imageCache;
+
+    @BeforeEach
+    void setUp() {
+        imageCache = new ImageContentCache(DataSize.ofKilobytes(64), DataSize.ofKilobytes(24), meterRegistry);
+    }
+
+    @Test
+    void write_ShouldLoadOnceAndServeFromCache() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+
+        assertTrue(imageCache.write(image, 0, DATA.length, first, this::load));
+        assertTrue(imageCache.write(image, 0, DATA.length, second, this::load));
+
+        assertEquals(1, loads.get());
+        assertArrayEquals(DATA, second.toByteArray());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "images").tag("result", "hit").functionCounter().count());
+        assertEquals(DirectPagePool.PAGE_SIZE, meterRegistry.get("cache.resident").tag("cache", "images").gauge().value());
+    }
+
+    @Test
+    void write_ShouldCopyRequestedSliceAcrossPages() throws IOException {
+        byte[] content = content(DirectPagePool.PAGE_SIZE * 2 + 100, 7);
+        ImageInfo large = new ImageInfo(2L, 1L, "large.png", content.length, "image/png", "large");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int offset = DirectPagePool.PAGE_SIZE - 10;
+
+        assertTrue(imageCache.write(large, offset, DirectPagePool.PAGE_SIZE + 50, out, target -> target.write(content)));
+
+        assertArrayEquals(Arrays.copyOfRange(content, offset, offset + DirectPagePool.PAGE_SIZE + 50), out.toByteArray());
+    }
+
+    @Test
+    void write_ShouldSkipImagesAboveEntryLimit() throws IOException {
+        ImageInfo large = new ImageInfo(2L, 1L, "large.png", DataSize.ofKilobytes(24).toBytes() + 1, "image/png", "large");
+
+        assertFalse(imageCache.write(large, 0, 1, new ByteArrayOutputStream(), out -> fail("must not be loaded")));
+    }
+
+    @Test
+    void write_ShouldNotKeepTruncatedContent() {
+        assertThrows(IOException.class, () -> imageCache.write(image, 0, DATA.length, new ByteArrayOutputStream(), out -> out.write(DATA, 0, 4)));
+
+        assertEquals(0.0, meterRegistry.get("cache.resident").tag("cache", "images").gauge().value());
+    }
+
+    @Test
+    void write_ShouldReusePagesOfEvictedContent() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            byte[] content = content(DirectPagePool.PAGE_SIZE * 2, i);
+            ImageInfo other = new ImageInfo(i, i, "other.png", content.length, "image/png", "other" + i);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            assertTrue(imageCache.write(other, 0, content.length, out, target -> target.write(content)));
+            assertArrayEquals(content, out.toByteArray());
+        }
+
+        assertEquals(DataSize.ofKilobytes(64).toBytes(), meterRegistry.get("cache.allocated").tag("cache", "images").gauge().value());
+    }
+
+    @Test
+    void write_ShouldKeepPagesOfEvictedContentUntilWritten() throws IOException {
+        byte[] first = content(DirectPagePool.PAGE_SIZE * 2, 1);
+        byte[] second = content(DirectPagePool.PAGE_SIZE * 2, 2);
+        ImageInfo firstImage = new ImageInfo(2L, 2L, "first.png", first.length, "image/png", "first");
+        ImageInfo secondImage = new ImageInfo(3L, 3L, "second.png", second.length, "image/png", "second");
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (size() == 0) {
+                    // the content is evicted and the pool is reused while this request is still writing
+                    imageCache.evict("first");
+                    try {
+                        imageCache.write(secondImage, 0, second.length, new ByteArrayOutputStream(), target -> target.write(second));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                super.write(b, off, len);
+            }
+        };
+
+        assertTrue(imageCache.write(firstImage, 0, first.length, out, target -> target.write(first)));
+
+        assertArrayEquals(first, out.toByteArray());
+    }
+
+    @Test
+    void evict_ShouldDropContent() throws IOException {
+        imageCache.write(image, 0, DATA.length, new ByteArrayOutputStream(), this::load);
+
+        imageCache.evict("hash");
+        imageCache.write(image, 0, DATA.length, new ByteArrayOutputStream(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    private void load(OutputStream out) throws IOException {
+        loads.incrementAndGet();
+        out.write(DATA);
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + seed);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,118 @@
+package ru.yandex.myblog.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.repository.FileSystemImageStore;
+import ru.yandex.myblog.repository.JdbcImageRepo;
+import ru.yandex.myblog.repository.PostgresBaseIntegrationTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {JdbcImageRepo.class, FileSystemImageStore.class, ImageContentCache.class, ImageService.class, SimpleMeterRegistry.class},
+        properties = "myblog.image-store.type=filesystem")
+class ImageServiceConcurrencyTest extends PostgresBaseIntegrationTest {
+
+    private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    private static Path root;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private FileSystemImageStore store;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void imageStoreRoot(DynamicPropertyRegistry registry) throws IOException {
+        root = Files.createTempDirectory("images");
+        registry.add("myblog.image-store.filesystem.root", root::toString);
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM images");
+        jdbcTemplate.update("DELETE FROM image_contents");
+        jdbcTemplate.update("DELETE FROM posts");
+        jdbcTemplate.update("ALTER SEQUENCE posts_id_seq RESTART WITH 1;");
+        jdbcTemplate.update("INSERT INTO posts(title, text, likesCount) VALUES ('Post 1', 'Content 1', 0)");
+        jdbcTemplate.update("INSERT INTO posts(title, text, likesCount) VALUES ('Post 2', 'Content 2', 0)");
+    }
+
+    @Test
+    void delete_ShouldKeepFileOfUncommittedUploadOfSameContent() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> imageService.save(1L, image()));
+        Path file = store.file(new ImageInfo(1L, 1L, "test.jpg", 4L, "image/jpeg", SHA256)).orElseThrow();
+        assertTrue(Files.exists(file));
+
+        CountDownLatch deleteCommitted = new CountDownLatch(1);
+        CountDownLatch uploadStored = new CountDownLatch(1);
+        CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> transaction.executeWithoutResult(status -> {
+            // registered before the delete, so it runs between the commit and the removal of the file
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteCommitted.countDown();
+                    await(uploadStored);
+                }
+            });
+            imageService.delete(1L);
+        }));
+
+        await(deleteCommitted);
+        transaction.executeWithoutResult(status -> {
+            // the delete committed, so the same bytes get a fresh content row and the file is found on disk
+            assertTrue(imageService.save(2L, image()));
+            uploadStored.countDown();
+            // give the delete time to get to the file while this upload is not committed yet
+            sleep();
+        });
+        delete.get(10, TimeUnit.SECONDS);
+
+        assertTrue(Files.exists(file));
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("image", "test.jpg", "image/jpeg", "test".getBytes());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
+import ru.yandex.myblog.model.event.ImageStoredEvent;
+import ru.yandex.myblog.model.exception.ImageNotFoundException;
+import ru.yandex.myblog.repository.ImageStore;
+import ru.yandex.myblog.repository.JdbcImageRepo;
+
+@ExtendWith(MockitoExtension.class)
+class ImageServiceTest {
+
+    private static final String TEST_SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Mock
+    private JdbcImageRepo imageRepo;
+
+    @Mock
+    private ImageStore imageStore;
+
+    @Mock
+    private ImageContentCache imageCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private ImageService imageService;
+
+    private final ImageInfo image = new ImageInfo(7L, 1L, "test.jpg", 4L, "image/jpeg", TEST_SHA256);
+
+    @Test
+    void save_ShouldInsertMetadataAndStoreContent() throws IOException {
+        MockMultipartFile file = spy(new MockMultipartFile("image", "test.jpg", "image/jpeg", "test".getBytes()));
+        when(imageRepo.acquireContent(TEST_SHA256, 4)).thenReturn(1);
+        when(imageRepo.save(1L, "test.jpg", "image/jpeg", TEST_SHA256, 4)).thenReturn(7L);
+
+        assertTrue(imageService.save(1L, file));
+
+        verify(file, never()).getBytes();
+        InOrder inOrder = inOrder(imageRepo, imageStore);
+        inOrder.verify(imageRepo).lockContent(TEST_SHA256);
+        inOrder.verify(imageStore).store(eq(image), any(InputStream.class));
+        verify(eventPublisher).publishEvent(new ImageStoredEvent(image));
+    }
+
+    @Test
+    void save_ShouldReuseContentStoredForAnotherPost() {
+        MockMultipartFile file = new MockMultipartFile("image", "test.jpg", "image/jpeg", "test".getBytes());
+        when(imageRepo.acquireContent(TEST_SHA256, 4)).thenReturn(2);
+
+        assertTrue(imageService.save(1L, file));
+
+        verify(imageRepo).save(1L, "test.jpg", "image/jpeg", TEST_SHA256, 4);
+        verifyNoInteractions(imageStore, eventPublisher);
+    }
+
+    @Test
+    void replace_ShouldKeepImageWithSameContent() {
+        MockMultipartFile file = new MockMultipartFile("image", "other.jpg", "image/jpeg", "test".getBytes());
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(image));
+
+        assertFalse(imageService.replace(1L, file));
+
+        verify(imageRepo, never()).delete(anyLong());
+        verify(imageRepo, never()).save(anyLong(), any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void replace_ShouldKeepImageWhenNoFileChosen() {
+        MockMultipartFile file = new MockMultipartFile("image", "", "application/octet-stream", new byte[0]);
+
+        assertFalse(imageService.replace(1L, file));
+
+        verifyNoInteractions(imageRepo, imageStore);
+    }
+
+    @Test
+    void replace_ShouldSwapImageWithOtherContent() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("image", "new.jpg", "image/jpeg", "new".getBytes());
+        String newSha256 = ImageService.sha256Hex("new".getBytes());
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(image));
+        when(imageRepo.releaseContent(TEST_SHA256)).thenReturn(1);
+        when(imageRepo.acquireContent(newSha256, 3)).thenReturn(1);
+
+        assertTrue(imageService.replace(1L, file));
+
+        verify(imageRepo).delete(1L);
+        verify(imageRepo).save(1L, "new.jpg", "image/jpeg", newSha256, 3);
+        verify(imageStore).store(argThat(stored -> stored.getSha256().equals(newSha256)), any(InputStream.class));
+    }
+
+    @Test
+    void save_ShouldNotStoreEmptyContent() {
+        MockMultipartFile file = new MockMultipartFile("image", "", "application/octet-stream", new byte[0]);
+
+        assertTrue(imageService.save(1L, file));
+
+        verify(imageRepo).save(eq(1L), eq(""), eq("application/octet-stream"), anyString(), eq(0L));
+        verify(imageRepo, never()).acquireContent(any(), anyLong());
+        verifyNoInteractions(imageStore, eventPublisher);
+    }
+
+    @Test
+    void saveVariant_ShouldInsertAndStoreVariant() throws IOException {
+        when(imageRepo.acquireContent(TEST_SHA256, 4)).thenReturn(1);
+        when(imageRepo.saveVariant(image, 640, "image/jpeg", TEST_SHA256, 4)).thenReturn(9L);
+
+        ImageVariant variant = imageService.saveVariant(image, 640, "image/jpeg", "test".getBytes());
+
+        assertEquals(9L, variant.getId());
+        assertEquals(TEST_SHA256, variant.getSourceSha256());
+        verify(imageStore).store(eq(variant), any(InputStream.class));
+    }
+
+    @Test
+    void getVariant_ShouldPickNarrowestWideEnoughVariant() {
+        ImageVariant narrow = new ImageVariant(8L, image, 640, 2L, "image/jpeg", "narrow");
+        ImageVariant wide = new ImageVariant(9L, image, 1280, 3L, "image/jpeg", "wide");
+        when(imageRepo.getVariants(image)).thenReturn(List.of(narrow, wide));
+
+        assertEquals(narrow, imageService.getVariant(image, 300));
+        assertEquals(wide, imageService.getVariant(image, 641));
+        assertEquals(image, imageService.getVariant(image, 2000));
+    }
+
+    @Test
+    void delete_ShouldReleaseContentNoLongerReferenced() {
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(image));
+        when(imageRepo.delete(1L)).thenReturn(true);
+        when(imageRepo.releaseContent(TEST_SHA256)).thenReturn(0);
+
+        assertTrue(imageService.delete(1L));
+
+        verify(imageRepo).deleteContent(TEST_SHA256);
+        verify(imageCache).evict(TEST_SHA256);
+        InOrder inOrder = inOrder(imageRepo, imageStore);
+        inOrder.verify(imageRepo).lockContent(TEST_SHA256);
+        inOrder.verify(imageRepo).isReferenced(TEST_SHA256);
+        inOrder.verify(imageStore).remove(image);
+    }
+
+    @Test
+    void delete_ShouldReleaseVariants() {
+        ImageVariant variant = new ImageVariant(8L, image, 640, 2L, "image/jpeg", "variant");
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(image));
+        when(imageRepo.getVariants(image)).thenReturn(List.of(variant));
+        when(imageRepo.releaseContent(TEST_SHA256)).thenReturn(0);
+        when(imageRepo.releaseContent("variant")).thenReturn(0);
+
+        imageService.delete(1L);
+
+        verify(imageRepo).deleteContent("variant");
+        verify(imageStore).remove(image);
+        verify(imageStore).remove(variant);
+    }
+
+    @Test
+    void delete_ShouldKeepContentSharedWithOtherImages() {
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(image));
+        when(imageRepo.releaseContent(TEST_SHA256)).thenReturn(1);
+
+        imageService.delete(1L);
+
+        verify(imageRepo, never()).deleteContent(any());
+        verify(imageStore, never()).remove(any());
+    }
+
+    @Test
+    void getInfoForPost_ShouldReturnStoredImage() {
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(image));
+
+        assertEquals(image, imageService.getInfoForPost(1L));
+    }
+
+    @Test
+    void getInfoForPost_ShouldThrowWhenImageIsEmpty() {
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.of(new ImageInfo(7L, 1L, "", 0L, null, null)));
+
+        assertThrows(ImageNotFoundException.class, () -> imageService.getInfoForPost(1L));
+    }
+
+    @Test
+    void getInfoForPost_ShouldThrowWhenImageIsMissing() {
+        when(imageRepo.getInfoByPostId(1L)).thenReturn(Optional.empty());
+
+        assertThrows(ImageNotFoundException.class, () -> imageService.getInfoForPost(1L));
+    }
+
+    @Test
+    void writeTo_ShouldServeCachedContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(imageCache.write(eq(image), eq(1L), eq(2L), eq(out), any())).thenReturn(true);
+
+        imageService.writeTo(image, 1, 2, out);
+
+        verify(imageStore, never()).copyTo(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void writeTo_ShouldStreamFromStoreWhenNotCacheable() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        imageService.writeTo(image, 1, 2, out);
+
+        verify(imageStore).copyTo(image, 1, 2, out);
+    }
+
+    @Test
+    void sha256Hex_ShouldReturnLowercaseDigest() {
+        assertEquals(TEST_SHA256, ImageService.sha256Hex("test".getBytes()));
+    }
+}
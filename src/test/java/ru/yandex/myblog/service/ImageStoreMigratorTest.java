@@ -0,0 +1,84 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.myblog.repository.DatabaseImageStore;
+import ru.yandex.myblog.repository.FileSystemImageStore;
+import ru.yandex.myblog.repository.JdbcImageRepo;
+
+@ExtendWith(MockitoExtension.class)
+class ImageStoreMigratorTest {
+
+    private static final String TEST_SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Mock
+    private JdbcImageRepo imageRepo;
+
+    @Mock
+    private FileSystemImageStore fileSystemImageStore;
+
+    private ImageStoreMigrator migrator;
+
+    @BeforeEach
+    void setUp() {
+        migrator = new ImageStoreMigrator(imageRepo, fileSystemImageStore);
+    }
+
+    @Test
+    void run_ShouldMoveEachImageBeforeClearingItsData() throws IOException {
+        when(imageRepo.findContentsWithInlineData("", 100)).thenReturn(List.of(TEST_SHA256, "ff"));
+        when(imageRepo.findContentsWithInlineData("ff", 100)).thenReturn(List.of());
+        when(imageRepo.readInlineData(TEST_SHA256)).thenReturn("test".getBytes());
+        when(imageRepo.readInlineData("ff")).thenReturn(new byte[0]);
+
+        migrator.run(null);
+
+        InOrder inOrder = inOrder(fileSystemImageStore, imageRepo);
+        inOrder.verify(fileSystemImageStore).store(argThat(image -> image.getSize() == 4
+                && image.getSha256().equals(TEST_SHA256)), any());
+        inOrder.verify(imageRepo).clearInlineData(TEST_SHA256);
+        verify(imageRepo).clearInlineData("ff");
+        verifyNoMoreInteractions(fileSystemImageStore);
+    }
+
+    @Test
+    void run_ShouldKeepDataWhenStoringFails() throws IOException {
+        when(imageRepo.findContentsWithInlineData("", 100)).thenReturn(List.of(TEST_SHA256));
+        when(imageRepo.readInlineData(TEST_SHA256)).thenReturn("test".getBytes());
+        doThrow(new IOException("disk full")).when(fileSystemImageStore).store(any(), any());
+
+        assertThrows(IOException.class, () -> migrator.run(null));
+
+        verify(imageRepo, never()).clearInlineData(anyString());
+    }
+
+    @Test
+    void run_ShouldSkipContentReleasedSinceItWasFound() throws IOException {
+        when(imageRepo.findContentsWithInlineData("", 100)).thenReturn(List.of(TEST_SHA256));
+        when(imageRepo.readInlineData(TEST_SHA256)).thenReturn(null);
+
+        migrator.run(null);
+
+        verify(imageRepo, never()).clearInlineData(anyString());
+        verifyNoInteractions(fileSystemImageStore);
+    }
+
+    @Test
+    void new_ShouldRejectDatabaseStore() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new ImageStoreMigrator(imageRepo, mock(DatabaseImageStore.class)));
+
+        assertTrue(e.getMessage().contains("myblog.image-store.type=filesystem"));
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.myblog.model.domain.ImageInfo;
+import ru.yandex.myblog.model.domain.ImageVariant;
+import ru.yandex.myblog.model.event.ImageStoredEvent;
+
+@ExtendWith(MockitoExtension.class)
+class ImageVariantServiceTest {
+
+    @Mock
+    private ImageService imageService;
+
+    private ImageVariantService imageVariantService;
+
+    private final ImageInfo image = new ImageInfo(7L, 1L, "photo.jpg", 100L, "image/jpeg", "hash");
+
+    @BeforeEach
+    void setUp() {
+        imageVariantService = new ImageVariantService(imageService, new int[]{1280, 640});
+    }
+
+    @Test
+    void generate_ShouldStoreEveryNarrowerWidth() throws IOException {
+        when(imageService.open(image)).thenReturn(new ByteArrayInputStream(encode(3000, 2000, "jpeg")));
+
+        imageVariantService.generate(image);
+
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        verify(imageService).saveVariant(eq(image), eq(1280), eq("image/jpeg"), data.capture());
+        verify(imageService).saveVariant(eq(image), eq(640), eq("image/jpeg"), data.capture());
+
+        BufferedImage wide = ImageIO.read(new ByteArrayInputStream(data.getAllValues().get(0)));
+        assertEquals(1280, wide.getWidth());
+        assertEquals(853, wide.getHeight());
+        BufferedImage narrow = ImageIO.read(new ByteArrayInputStream(data.getAllValues().get(1)));
+        assertEquals(640, narrow.getWidth());
+        assertEquals(427, narrow.getHeight());
+    }
+
+    @Test
+    void generate_ShouldKeepPngFormat() throws IOException {
+        when(imageService.open(image)).thenReturn(new ByteArrayInputStream(encode(1000, 1000, "png")));
+
+        imageVariantService.generate(image);
+
+        verify(imageService).saveVariant(eq(image), eq(640), eq("image/png"), any());
+        verify(imageService, never()).saveVariant(eq(image), eq(1280), any(), any());
+    }
+
+    @Test
+    void generate_ShouldSkipExistingWidths() throws IOException {
+        when(imageService.getVariants(image)).thenReturn(List.of(new ImageVariant(8L, image, 1280, 10L, "image/jpeg", "wide")));
+        when(imageService.open(image)).thenReturn(new ByteArrayInputStream(encode(3000, 2000, "jpeg")));
+
+        imageVariantService.generate(image);
+
+        verify(imageService).saveVariant(eq(image), eq(640), eq("image/jpeg"), any());
+        verify(imageService, never()).saveVariant(eq(image), eq(1280), any(), any());
+    }
+
+    @Test
+    void generate_ShouldLeaveNarrowImageAlone() throws IOException {
+        when(imageService.open(image)).thenReturn(new ByteArrayInputStream(encode(600, 400, "jpeg")));
+
+        imageVariantService.generate(image);
+
+        verify(imageService, never()).saveVariant(any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void onImageStored_ShouldIgnoreUnreadableContent() throws IOException {
+        when(imageService.open(image)).thenReturn(new ByteArrayInputStream("not an image".getBytes()));
+
+        imageVariantService.onImageStored(new ImageStoredEvent(image));
+
+        verify(imageService, never()).saveVariant(any(), anyInt(), any(), any());
+        verify(imageService).markVariantsDone(image);
+    }
+
+    @Test
+    void onImageStored_ShouldMarkVariantsDoneAfterFailure() throws IOException {
+        when(imageService.open(image)).thenThrow(new IOException("gone"));
+
+        imageVariantService.onImageStored(new ImageStoredEvent(image));
+
+        verify(imageService).markVariantsDone(image);
+    }
+
+    @Test
+    void backfill_ShouldProcessEachPendingContentOnce() throws IOException {
+        ImageInfo same = new ImageInfo(9L, 2L, "copy.jpg", 100L, "image/jpeg", "hash");
+        when(imageService.findImagesWithPendingVariants(0L, 100)).thenReturn(List.of(image, same));
+        when(imageService.findImagesWithPendingVariants(9L, 100)).thenReturn(List.of());
+        when(imageService.isVariantsDone(image)).thenReturn(false);
+        when(imageService.isVariantsDone(same)).thenReturn(true);
+        when(imageService.open(image)).thenReturn(new ByteArrayInputStream(encode(600, 400, "jpeg")));
+
+        imageVariantService.backfill();
+
+        verify(imageService).markVariantsDone(image);
+        verify(imageService, never()).open(same);
+    }
+
+    private static byte[] encode(int width, int height, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.myblog.model.event.LikesFlushedEvent;
+import ru.yandex.myblog.model.event.PostChangedEvent;
+import ru.yandex.myblog.repository.JdbcPostRepository;
+
+@ExtendWith(MockitoExtension.class)
+class LikeBufferTest {
+
+    @Mock
+    private JdbcPostRepository postRepo;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private LikeBuffer likeBuffer;
+
+    @Test
+    void pending_ShouldSumClicksOfPost() {
+        likeBuffer.add(1L, 1);
+        likeBuffer.add(1L, 1);
+        likeBuffer.add(1L, -1);
+        likeBuffer.add(2L, 1);
+
+        assertEquals(1, likeBuffer.pending(1L));
+        assertEquals(1, likeBuffer.pending(2L));
+        assertEquals(0, likeBuffer.pending(3L));
+    }
+
+    @Test
+    void flush_ShouldWriteAllPostsInOneBatch() {
+        likeBuffer.add(1L, 1);
+        likeBuffer.add(1L, 1);
+        likeBuffer.add(2L, -1);
+
+        likeBuffer.flush();
+
+        verify(postRepo).addLikes(Map.of(1L, 2L, 2L, -1L));
+        verify(transactionManager).commit(any());
+        verify(eventPublisher).publishEvent(new LikesFlushedEvent(Set.of(1L, 2L)));
+        verifyNoMoreInteractions(eventPublisher);
+        assertEquals(0, likeBuffer.pending(1L));
+        assertEquals(0, likeBuffer.pending(2L));
+    }
+
+    @Test
+    void flush_ShouldKeepClicksPendingUntilWritten() {
+        likeBuffer.add(1L, 1);
+        likeBuffer.add(1L, 1);
+        doAnswer(invocation -> {
+            assertEquals(2, likeBuffer.pending(1L));
+            // a click arriving during the write is left for the next flush
+            likeBuffer.add(1L, 1);
+            return null;
+        }).when(postRepo).addLikes(anyMap());
+
+        likeBuffer.flush();
+
+        verify(postRepo).addLikes(Map.of(1L, 2L));
+        assertEquals(1, likeBuffer.pending(1L));
+    }
+
+    @Test
+    void flush_ShouldNotWriteSameClicksTwiceWhenFlushesOverlap() throws Exception {
+        likeBuffer.add(1L, 1);
+        AtomicReference<CompletableFuture<Void>> second = new AtomicReference<>();
+        doAnswer(invocation -> {
+            if (second.get() == null) {
+                // the shutdown flush starts while the scheduled one is writing
+                second.set(CompletableFuture.runAsync(likeBuffer::flush));
+                assertThrows(TimeoutException.class, () -> second.get().get(200, TimeUnit.MILLISECONDS));
+            }
+            return null;
+        }).when(postRepo).addLikes(anyMap());
+
+        likeBuffer.flush();
+        second.get().get(10, TimeUnit.SECONDS);
+
+        verify(postRepo, times(1)).addLikes(Map.of(1L, 1L));
+        assertEquals(0, likeBuffer.pending(1L));
+    }
+
+    @Test
+    void flush_ShouldSkipPostsWhoseClicksCancelOut() {
+        likeBuffer.add(1L, 1);
+        likeBuffer.add(1L, -1);
+
+        likeBuffer.flush();
+
+        verifyNoInteractions(postRepo, eventPublisher, transactionManager);
+    }
+
+    @Test
+    void flush_ShouldKeepClicksWhenWriteFails() {
+        likeBuffer.add(1L, 1);
+        doThrow(new QueryTimeoutException("timeout")).when(postRepo).addLikes(anyMap());
+
+        likeBuffer.flush();
+
+        assertEquals(1, likeBuffer.pending(1L));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void onPostChanged_ShouldDropClicksOfDeletedPost() {
+        likeBuffer.add(1L, 1);
+
+        likeBuffer.onPostChanged(PostChangedEvent.of(1L, PostChangedEvent.Type.DELETED));
+        likeBuffer.flush();
+
+        assertEquals(0, likeBuffer.pending(1L));
+        verifyNoInteractions(postRepo);
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.myblog.repository.JdbcPostRepository;
+
+@ExtendWith(MockitoExtension.class)
+class PostCountCacheTest {
+
+    @Mock
+    private JdbcPostRepository postRepo;
+
+    @InjectMocks
+    private PostCountCache postCountCache;
+
+    @Test
+    void getCount_ShouldQueryOnceAndServeFromCache() {
+        when(postRepo.getTotalPostsCount()).thenReturn(25);
+
+        assertEquals(25, postCountCache.getCount());
+        assertEquals(25, postCountCache.getCount());
+
+        verify(postRepo, times(1)).getTotalPostsCount();
+    }
+
+    @Test
+    void getCount_ShouldTreatNullCountAsZero() {
+        when(postRepo.getTotalPostsCount()).thenReturn(null);
+
+        assertEquals(0, postCountCache.getCount());
+    }
+
+    @Test
+    void refresh_ShouldReloadCachedCount() {
+        when(postRepo.getTotalPostsCount()).thenReturn(25, 26);
+        postCountCache.getCount();
+
+        postCountCache.refresh();
+
+        assertEquals(26, postCountCache.getCount());
+        verify(postRepo, times(2)).getTotalPostsCount();
+    }
+
+    @Test
+    void refresh_ShouldNotLoadCountNobodyAskedFor() {
+        postCountCache.refresh();
+
+        verifyNoInteractions(postRepo);
+    }
+}
@@ -4,22 +4,27 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 import ru.yandex.myblog.model.domain.Comment;
-import ru.yandex.myblog.model.domain.ImageBlob;
+import ru.yandex.myblog.model.domain.ImageInfo;
 import ru.yandex.myblog.model.domain.Post;
 import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.model.dto.PostVersion;
+import ru.yandex.myblog.model.event.PostChangedEvent;
 import ru.yandex.myblog.model.exception.PostNotFoundException;
 import ru.yandex.myblog.repository.JdbcCommentRepository;
 import ru.yandex.myblog.repository.JdbcImageRepo;
@@ -34,9 +39,17 @@ class PostServiceTest {
     @Mock
     private JdbcTagRepository tagRepo;
     @Mock
+    private TagDictionary tagDictionary;
+    @Mock
     private JdbcCommentRepository commentsRepo;
     @Mock
     private JdbcImageRepo imageRepo;
+    @Mock
+    private ImageService imageService;
+    @Mock
+    private LikeBuffer likeBuffer;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private PostService postService;
@@ -44,7 +57,7 @@ class PostServiceTest {
     private final Post testPost = new Post(1L, "Test Post", "Test Content", 10);
     private final Tag testTag = new Tag(1L, "test-tag");
     private final Comment testComment = new Comment(1L, 1L, "Test comment");
-    private final ImageBlob testImage = new ImageBlob(1L, 1L, "image/jpeg", new byte[]{});
+    private final ImageInfo testImage = new ImageInfo(1L, 1L, "test.jpg", 3L, "image/jpeg", "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
     private MultipartFile file = new MockMultipartFile("test.jpg", "test.jpg", "image/jpeg", new byte[]{});
 
     @Test
@@ -53,36 +66,58 @@ class PostServiceTest {
         String text = "Test Content";
         String tagsStr = "tag1 tag2";
         long postId = 1L;
+        MockMultipartFile image = new MockMultipartFile("image", "test.jpg", "image/jpeg", "test".getBytes());
+
+        Post saved = new Post(postId, title, text, 0);
+        saved.setPreview(text);
+        saved.setTags(Arrays.asList(new Tag(1L, "tag1"), new Tag(2L, "tag2")));
+        when(postRepo.saveWithTags(title, text, text, Set.of("tag1", "tag2"))).thenReturn(saved);
 
-        List<Tag> tags = Arrays.asList(new Tag("tag1"), new Tag("tag2"));
-        List<Tag> savedTags = Arrays.asList(new Tag(1L, "tag1"), new Tag(2L, "tag2"));
+        Post result = postService.createPost(title, text, image, tagsStr);
 
-        when(postRepo.save(any(Post.class))).thenReturn(postId);
-        when(tagRepo.getTagsByNames(anyList())).thenReturn(savedTags);
+        assertEquals(saved, result);
+        verify(imageService).save(postId, image);
+        verify(tagDictionary).remember(saved.getTags());
+        verifyNoInteractions(tagRepo);
+        verify(eventPublisher).publishEvent(new PostChangedEvent(postId, PostChangedEvent.Type.CREATED, Set.of("tag1", "tag2")));
+    }
 
-        Post result = postService.createPost(title, text, file, tagsStr);
+    @Test
+    void createPost_ShouldSkipMissingImage() {
+        when(postRepo.saveWithTags(any(), any(), any(), any())).thenReturn(testPost);
 
-        assertNotNull(result);
-        assertEquals(postId, result.getId());
-        assertEquals(title, result.getTitle());
-        assertEquals(text, result.getText());
-        assertEquals(0, result.getLikesCount());
-        assertEquals(2, result.getTags().size());
+        postService.createPost("Test Post", "Test Content", file, "");
+
+        verify(postRepo).saveWithTags("Test Post", "Test Content", "Test Content", Set.of());
+        verifyNoInteractions(imageService);
+    }
+
+    @Test
+    void createPost_ShouldStoreTruncatedPreview() {
+        String text = "a".repeat(1000);
+        when(postRepo.saveWithTags(any(), any(), any(), any())).thenReturn(testPost);
+
+        postService.createPost("Long Post", text, file, "tag1");
+
+        verify(postRepo).saveWithTags(eq("Long Post"), eq(text), argThat(preview -> preview.length() == 300 && text.startsWith(preview)), any());
+    }
+
+    @Test
+    void createPost_ShouldStripSearchMatchMarks() {
+        when(postRepo.saveWithTags(any(), any(), any(), any())).thenReturn(testPost);
 
-        verify(postRepo).save(any(Post.class));
-        verify(imageRepo).save(postId, file);
-        verify(tagRepo).saveBatch(tags);
-        verify(tagRepo).getTagsByNames(Arrays.asList("tag1", "tag2"));
-        verify(tagRepo).bindTagsToPost(postId, savedTags);
+        postService.createPost("Ti\u0002tle", "Te\u0003xt", file, "");
+
+        verify(postRepo).saveWithTags("Title", "Text", "Text", Set.of());
     }
 
     @Test
     void getPost_ShouldReturnPostWithAllRelatedEntities() {
         long postId = 1L;
         when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
-        when(tagRepo.getTagsForPost(postId)).thenReturn(Collections.singletonList(testTag));
+        when(tagDictionary.getTagsForPost(postId)).thenReturn(Collections.singletonList(testTag));
         when(commentsRepo.getAllForPost(postId)).thenReturn(Collections.singletonList(testComment));
-        when(imageRepo.getByPostId(postId)).thenReturn(testImage);
+        when(imageRepo.getInfoByPostId(postId)).thenReturn(Optional.of(testImage));
 
         Post result = postService.getPost(postId);
 
@@ -93,9 +128,113 @@ class PostServiceTest {
         assertEquals(testImage, result.getImage());
 
         verify(postRepo).findById(postId);
-        verify(tagRepo).getTagsForPost(postId);
+        verify(tagDictionary).getTagsForPost(postId);
         verify(commentsRepo).getAllForPost(postId);
-        verify(imageRepo).getByPostId(postId);
+        verify(imageRepo).getInfoByPostId(postId);
+    }
+
+    @Test
+    void update_ShouldWriteOnlyChangedText() {
+        long postId = 1L;
+        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
+        when(tagDictionary.getTagsForPost(postId)).thenReturn(List.of(testTag));
+        MockMultipartFile noImage = new MockMultipartFile("image", "", "application/octet-stream", new byte[0]);
+
+        Post result = postService.update(postId, "Test Post", "Fixed Content", noImage, "test-tag");
+
+        assertEquals("Fixed Content", result.getText());
+        assertEquals(List.of(testTag), result.getTags());
+        verify(postRepo).update(postId, null, "Fixed Content", "Fixed Content");
+        verify(tagDictionary, never()).getOrCreate(any());
+        verify(tagRepo, never()).bindTagsToPost(anyLong(), any());
+        verify(tagRepo, never()).deleteTagToPostConnections(anyLong());
+        verify(eventPublisher).publishEvent(new PostChangedEvent(postId, PostChangedEvent.Type.UPDATED, Set.of("test-tag")));
+    }
+
+    @Test
+    void update_ShouldBindOnlyTagDelta() {
+        long postId = 1L;
+        Tag added = new Tag(2L, "added");
+        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
+        when(tagDictionary.getTagsForPost(postId)).thenReturn(List.of(testTag));
+        when(tagDictionary.getOrCreate(List.of("added"))).thenReturn(List.of(added));
+
+        Post result = postService.update(postId, "Test Post", "Test Content", file, "added");
+
+        assertEquals(List.of(added), result.getTags());
+        verify(tagRepo).unbindTagsFromPost(postId, List.of(1L));
+        verify(tagRepo).bindTagsToPost(postId, List.of(added));
+        verify(postRepo).touch(postId);
+        verify(postRepo, never()).update(anyLong(), any(), any(), any());
+        verify(eventPublisher).publishEvent(new PostChangedEvent(postId, PostChangedEvent.Type.UPDATED, Set.of("test-tag", "added")));
+    }
+
+    @Test
+    void update_ShouldWriteNothingWhenNothingChanged() {
+        long postId = 1L;
+        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
+        when(tagDictionary.getTagsForPost(postId)).thenReturn(List.of(testTag));
+
+        postService.update(postId, "Test Post", "Test Content", file, "test-tag");
+
+        verify(postRepo, never()).update(anyLong(), any(), any(), any());
+        verify(postRepo, never()).touch(anyLong());
+        verify(tagDictionary, never()).getOrCreate(any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void update_ShouldThrowExceptionWhenPostNotFound() {
+        when(postRepo.findById(999L)).thenReturn(Optional.empty());
+
+        assertThrows(PostNotFoundException.class, () -> postService.update(999L, "Title", "Text", file, ""));
+        verifyNoInteractions(tagRepo, tagDictionary, imageService);
+    }
+
+    @Test
+    void getPostVersion_ShouldReturnStoredVersion() {
+        PostVersion version = new PostVersion(1L, 3L, Instant.parse("2025-01-01T00:00:00Z"));
+        when(postRepo.findVersionById(1L)).thenReturn(Optional.of(version));
+
+        assertEquals(version, postService.getPostVersion(1L));
+        verifyNoInteractions(tagDictionary, commentsRepo, imageRepo);
+    }
+
+    @Test
+    void getPostVersion_ShouldIncludePendingLikes() {
+        PostVersion version = new PostVersion(1L, 3L, Instant.parse("2025-01-01T00:00:00Z"));
+        when(postRepo.findVersionById(1L)).thenReturn(Optional.of(version));
+        when(likeBuffer.pending(1L)).thenReturn(2);
+
+        PostVersion result = postService.getPostVersion(1L);
+
+        assertEquals(2, result.pendingLikes());
+        assertNotEquals(version.eTag(), result.eTag());
+    }
+
+    @Test
+    void getPost_ShouldAddPendingLikes() {
+        long postId = 1L;
+        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
+        when(likeBuffer.pending(postId)).thenReturn(3);
+
+        assertEquals(13, postService.getPost(postId).getLikesCount());
+    }
+
+    @Test
+    void getPost_ShouldNotShowNegativeLikes() {
+        long postId = 1L;
+        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
+        when(likeBuffer.pending(postId)).thenReturn(-15);
+
+        assertEquals(0, postService.getPost(postId).getLikesCount());
+    }
+
+    @Test
+    void getPostVersion_ShouldThrowExceptionWhenPostNotFound() {
+        when(postRepo.findVersionById(999L)).thenReturn(Optional.empty());
+
+        assertThrows(PostNotFoundException.class, () -> postService.getPostVersion(999L));
     }
 
     @Test
@@ -105,42 +244,45 @@ class PostServiceTest {
 
         assertThrows(PostNotFoundException.class, () -> postService.getPost(postId));
         verify(postRepo).findById(postId);
-        verifyNoMoreInteractions(tagRepo, commentsRepo, imageRepo);
+        verifyNoMoreInteractions(tagDictionary, commentsRepo, imageRepo);
     }
 
     @Test
     void likePost_ShouldIncreaseLikesCount() {
         long postId = 1L;
-        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
-        when(tagRepo.getTagsForPost(postId)).thenReturn(Collections.emptyList());
-        when(commentsRepo.getAllForPost(postId)).thenReturn(Collections.emptyList());
-        when(imageRepo.getByPostId(postId)).thenReturn(null);
+        when(postRepo.findLikesCount(postId)).thenReturn(Optional.of(10));
+        when(likeBuffer.pending(postId)).thenReturn(1);
 
-        Post result = postService.likePost(postId, true);
+        assertEquals(11, postService.likePost(postId, true));
 
-        verify(postRepo).likePost(postId);
-        verify(postRepo, never()).unlikePost(anyLong());
-        verify(postRepo).findById(postId);
+        verify(likeBuffer).add(postId, 1);
+        verify(postRepo, never()).findById(anyLong());
+        verifyNoInteractions(tagDictionary, commentsRepo, imageRepo, eventPublisher);
     }
 
     @Test
     void likePost_ShouldDecreaseLikesCount() {
         long postId = 1L;
-        when(postRepo.findById(postId)).thenReturn(Optional.of(testPost));
-        when(tagRepo.getTagsForPost(postId)).thenReturn(Collections.emptyList());
-        when(commentsRepo.getAllForPost(postId)).thenReturn(Collections.emptyList());
-        when(imageRepo.getByPostId(postId)).thenReturn(null);
+        when(postRepo.findLikesCount(postId)).thenReturn(Optional.of(10));
+        when(likeBuffer.pending(postId)).thenReturn(-1);
 
-        Post result = postService.likePost(postId, false);
+        assertEquals(9, postService.likePost(postId, false));
 
-        verify(postRepo).unlikePost(postId);
-        verify(postRepo, never()).likePost(anyLong());
-        verify(postRepo).findById(postId);
+        verify(likeBuffer).add(postId, -1);
+    }
+
+    @Test
+    void likePost_ShouldThrowExceptionWhenPostNotFound() {
+        when(postRepo.findLikesCount(999L)).thenReturn(Optional.empty());
+
+        assertThrows(PostNotFoundException.class, () -> postService.likePost(999L, true));
+        verifyNoInteractions(likeBuffer, eventPublisher);
     }
 
     @Test
     void deletePost_ShouldDeleteAllRelatedEntities() {
         long postId = 1L;
+        when(tagDictionary.getTagsForPost(postId)).thenReturn(List.of(testTag));
         when(commentsRepo.deleteAllForPost(postId)).thenReturn(3);
         when(tagRepo.deleteTagToPostConnections(postId)).thenReturn(2);
         when(postRepo.deleteById(postId)).thenReturn(1);
@@ -149,8 +291,9 @@ class PostServiceTest {
 
         verify(commentsRepo).deleteAllForPost(postId);
         verify(tagRepo).deleteTagToPostConnections(postId);
-        verify(imageRepo).delete(postId);
+        verify(imageService).delete(postId);
         verify(postRepo).deleteById(postId);
+        verify(eventPublisher).publishEvent(new PostChangedEvent(postId, PostChangedEvent.Type.DELETED, Set.of("test-tag")));
     }
 
     @Test
@@ -164,7 +307,8 @@ class PostServiceTest {
 
         verify(commentsRepo).deleteAllForPost(postId);
         verify(tagRepo).deleteTagToPostConnections(postId);
-        verify(imageRepo).delete(postId);
+        verify(imageService).delete(postId);
         verify(postRepo).deleteById(postId);
+        verifyNoInteractions(eventPublisher);
     }
-}
\ No newline at end of file
+}
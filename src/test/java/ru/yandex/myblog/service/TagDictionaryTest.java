@@ -0,0 +1,83 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.myblog.model.domain.Tag;
+import ru.yandex.myblog.repository.JdbcTagRepository;
+
+@ExtendWith(MockitoExtension.class)
+class TagDictionaryTest {
+
+    @Mock
+    private JdbcTagRepository tagRepo;
+
+    @InjectMocks
+    private TagDictionary tagDictionary;
+
+    @Test
+    void getTagsForPosts_ShouldResolveNamesInMemoryAfterWarmUp() {
+        when(tagRepo.findAll()).thenReturn(List.of(new Tag(1L, "java"), new Tag(2L, "spring")));
+        when(tagRepo.getTagIdsForPosts(List.of(10L, 11L))).thenReturn(Map.of(10L, List.of(1L, 2L), 11L, List.of(2L)));
+
+        tagDictionary.warmUp();
+        Map<Long, List<Tag>> result = tagDictionary.getTagsForPosts(List.of(10L, 11L));
+
+        assertEquals(List.of(new Tag(1L, "java"), new Tag(2L, "spring")), result.get(10L));
+        assertEquals(List.of(new Tag(2L, "spring")), result.get(11L));
+        verify(tagRepo, never()).getTagsByIds(any());
+    }
+
+    @Test
+    void getTagsForPost_ShouldLoadOnlyUnknownTags() {
+        tagDictionary.remember(List.of(new Tag(1L, "java")));
+        when(tagRepo.getTagIdsForPost(10L)).thenReturn(List.of(1L, 2L));
+        when(tagRepo.getTagsByIds(Set.of(2L))).thenReturn(List.of(new Tag(2L, "spring")));
+
+        assertEquals(List.of(new Tag(1L, "java"), new Tag(2L, "spring")), tagDictionary.getTagsForPost(10L));
+        assertEquals(Optional.of(2L), tagDictionary.findId("spring"));
+        verify(tagRepo, never()).findIdByName(any());
+    }
+
+    @Test
+    void getTagsForPost_ShouldShareInternedNames() {
+        tagDictionary.remember(List.of(new Tag(1L, new String("java"))));
+        when(tagRepo.getTagIdsForPost(10L)).thenReturn(List.of(1L));
+
+        assertSame("java", tagDictionary.getTagsForPost(10L).get(0).getName());
+    }
+
+    @Test
+    void findId_ShouldFallBackToDatabase() {
+        when(tagRepo.findIdByName("java")).thenReturn(Optional.of(1L));
+        when(tagRepo.findIdByName("unknown")).thenReturn(Optional.empty());
+
+        assertEquals(Optional.of(1L), tagDictionary.findId("java"));
+        assertEquals(Optional.of(1L), tagDictionary.findId("java"));
+        assertTrue(tagDictionary.findId("unknown").isEmpty());
+        verify(tagRepo, times(1)).findIdByName("java");
+    }
+
+    @Test
+    void getOrCreate_ShouldInsertOnlyUnknownNames() {
+        tagDictionary.remember(List.of(new Tag(1L, "java")));
+        when(tagRepo.getTagsByNames(List.of("kotlin"))).thenReturn(List.of(new Tag(3L, "kotlin")));
+
+        List<Tag> result = tagDictionary.getOrCreate(List.of("java", "kotlin"));
+
+        assertEquals(List.of(new Tag(1L, "java"), new Tag(3L, "kotlin")), result);
+        verify(tagRepo).saveBatch(List.of(new Tag("kotlin")));
+        assertEquals(Optional.of(3L), tagDictionary.findId("kotlin"));
+    }
+}
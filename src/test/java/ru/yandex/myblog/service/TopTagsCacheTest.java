@@ -0,0 +1,62 @@
+package ru.yandex.myblog.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.yandex.myblog.model.dto.TagCount;
+import ru.yandex.myblog.model.event.PostChangedEvent;
+import ru.yandex.myblog.repository.JdbcTagRepository;
+
+@ExtendWith(MockitoExtension.class)
+class TopTagsCacheTest {
+
+    @Mock
+    private JdbcTagRepository tagRepo;
+
+    private TopTagsCache topTagsCache;
+
+    private final List<TagCount> tags = List.of(new TagCount("java", 3), new TagCount("spring", 2), new TagCount("sql", 1));
+
+    @BeforeEach
+    void setUp() {
+        topTagsCache = new TopTagsCache(tagRepo, 50);
+    }
+
+    @Test
+    void getTop_ShouldLoadOnceAndCutToLimit() {
+        when(tagRepo.getTopTags(50)).thenReturn(tags);
+
+        assertEquals(tags.subList(0, 2), topTagsCache.getTop(2));
+        assertEquals(tags, topTagsCache.getTop(10));
+
+        verify(tagRepo, times(1)).getTopTags(50);
+    }
+
+    @Test
+    void onPostChanged_ShouldReloadAfterPostCreated() {
+        when(tagRepo.getTopTags(50)).thenReturn(tags).thenReturn(List.of());
+
+        topTagsCache.getTop(10);
+        topTagsCache.onPostChanged(PostChangedEvent.of(1L, PostChangedEvent.Type.CREATED));
+
+        assertTrue(topTagsCache.getTop(10).isEmpty());
+    }
+
+    @Test
+    void onPostChanged_ShouldKeepTagsWhenPostCommented() {
+        when(tagRepo.getTopTags(50)).thenReturn(tags);
+
+        topTagsCache.getTop(10);
+        topTagsCache.onPostChanged(PostChangedEvent.of(1L, PostChangedEvent.Type.COMMENTED));
+        topTagsCache.getTop(10);
+
+        verify(tagRepo, times(1)).getTopTags(50);
+    }
+}